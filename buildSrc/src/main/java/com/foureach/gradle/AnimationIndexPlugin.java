@@ -0,0 +1,50 @@
+package com.foureach.gradle;
+
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+
+import java.io.File;
+
+/**
+ * Adds a {@code generateAnimationIndex} task that indexes the {@code animation-list} drawables of
+ * {@code src/main/res} into {@code build/generated/res/animationIndex} and generates their table
+ * of resource ids into {@code build/generated/source/animationIndex}, and runs it before the
+ * Android build. Add the output directories to the Android source set, so the table is compiled
+ * with the R class:
+ *
+ * <pre>
+ * apply plugin: com.foureach.gradle.AnimationIndexPlugin
+ *
+ * android.sourceSets.main.res.srcDir generateAnimationIndex.outputDir
+ * android.sourceSets.main.java.srcDir generateAnimationIndex.sourceOutputDir
+ * </pre>
+ *
+ * @see AnimationIndexTask
+ */
+public class AnimationIndexPlugin implements Plugin<Project> {
+    public static final String TASK_NAME = "generateAnimationIndex";
+
+    @Override
+    public void apply(Project project) {
+        final AnimationIndexTask task = project.getTasks().create(TASK_NAME,
+                AnimationIndexTask.class);
+        task.setGroup("build");
+        task.setDescription("Indexes animation-list drawables for loading without XML parsing.");
+        task.resDir(project.file("src/main/res"));
+        task.setManifestFile(project.file("src/main/AndroidManifest.xml"));
+        task.setOutputDir(new File(project.getBuildDir(), "generated/res/animationIndex"));
+        task.setSourceOutputDir(new File(project.getBuildDir(),
+                "generated/source/animationIndex"));
+        project.afterEvaluate(new Action<Project>() {
+            @Override
+            public void execute(Project project) {
+                final Task preBuild = project.getTasks().findByName("preBuild");
+                if (preBuild != null) {
+                    preBuild.dependsOn(task);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,425 @@
+package com.foureach.gradle;
+
+import com.foureach.graphics.animation.AnimationIndex;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Generates an {@link AnimationIndex} for every {@code animation-list} drawable in the resource
+ * directories, written to {@code raw/<name>_index.bin} in the output directory, or to the raw
+ * directory with the same qualifiers as the drawable directory. The frames of all indexes refer
+ * to one table of resource ids, generated as {@code AnimationFrames.DRAWABLES} in the package of
+ * the manifest from {@code R.drawable} references, so no frame is looked up by name at runtime.
+ * Load an index with {@code loadFromIndex(res, R.raw.<name>_index, AnimationFrames.DRAWABLES)}
+ * of {@code LazyLoadingAnimationDrawable}.
+ *
+ * <p>Only animation lists whose items refer to their drawables with {@code @drawable/} or
+ * {@code @mipmap/} and use literal durations are indexed; others are skipped with a warning and
+ * can still be loaded from their XML. Frame sizes are measured on the highest density variant of
+ * each image. WebP images, which the build JVM cannot read, are recorded with an unknown size.
+ */
+public class AnimationIndexTask extends DefaultTask {
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".webp"};
+
+    static final String TABLE_CLASS = "AnimationFrames";
+
+    private List<File> mResDirs = new ArrayList<>();
+
+    private File mManifestFile;
+
+    private File mOutputDir;
+
+    private File mSourceOutputDir;
+
+    /**
+     * The position of each drawable in the generated resource table, by resource name.
+     */
+    private final Map<String, Integer> mResources = new LinkedHashMap<>();
+
+    @InputFiles
+    public List<File> getResDirs() {
+        return mResDirs;
+    }
+
+    public void setResDirs(List<File> resDirs) {
+        mResDirs = resDirs;
+    }
+
+    public void resDir(File dir) {
+        mResDirs.add(dir);
+    }
+
+    /**
+     * The manifest whose package the resource table is generated in.
+     */
+    @InputFile
+    public File getManifestFile() {
+        return mManifestFile;
+    }
+
+    public void setManifestFile(File manifestFile) {
+        mManifestFile = manifestFile;
+    }
+
+    /**
+     * The resource directory the indexes are written to.
+     */
+    @OutputDirectory
+    public File getOutputDir() {
+        return mOutputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        mOutputDir = outputDir;
+    }
+
+    /**
+     * The source directory the resource table is written to.
+     */
+    @OutputDirectory
+    public File getSourceOutputDir() {
+        return mSourceOutputDir;
+    }
+
+    public void setSourceOutputDir(File sourceOutputDir) {
+        mSourceOutputDir = sourceOutputDir;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        getProject().delete(mOutputDir, mSourceOutputDir);
+        mResources.clear();
+        final DocumentBuilder builder = newDocumentBuilder();
+        for (File resDir : mResDirs) {
+            for (File dir : listSorted(resDir)) {
+                if (!dir.isDirectory() || !dir.getName().startsWith("drawable")) {
+                    continue;
+                }
+                final File rawDir = new File(mOutputDir,
+                        "raw" + dir.getName().substring("drawable".length()));
+                for (File file : listSorted(dir)) {
+                    if (file.getName().endsWith(".xml")) {
+                        generate(builder, file, rawDir);
+                    }
+                }
+            }
+        }
+        writeTable(readPackage(builder));
+    }
+
+    /**
+     * @return the files of a directory in name order, so the generated table is stable
+     */
+    private static File[] listSorted(File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new GradleException("Cannot create XML parser", e);
+        }
+    }
+
+    private void generate(DocumentBuilder builder, File xml, File rawDir) throws IOException {
+        final Document document;
+        try {
+            document = builder.parse(xml);
+        } catch (SAXException e) {
+            throw new GradleException("Cannot parse " + xml, e);
+        }
+        final Element root = document.getDocumentElement();
+        if (!"animation-list".equals(root.getTagName())) {
+            return;
+        }
+        final AnimationIndex index;
+        try {
+            index = buildIndex(root);
+        } catch (IllegalArgumentException e) {
+            getLogger().warn("Skipping " + xml + ": " + e.getMessage());
+            return;
+        }
+        final String name = xml.getName().substring(0, xml.getName().length() - ".xml".length());
+        final File out = new File(rawDir, name + "_index.bin");
+        if (!rawDir.isDirectory() && !rawDir.mkdirs()) {
+            throw new GradleException("Cannot create " + rawDir);
+        }
+        final OutputStream stream = new FileOutputStream(out);
+        try {
+            index.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private AnimationIndex buildIndex(Element root) throws IOException {
+        final AnimationIndex index = new AnimationIndex();
+        index.setOneShot(parseBoolean(root.getAttributeNS(ANDROID_NS, "oneshot")));
+        // Every item is parsed before any is added, so a skipped list adds nothing to the table.
+        final List<String> names = new ArrayList<>();
+        final List<Integer> durations = new ArrayList<>();
+        final NodeList children = root.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node node = children.item(i);
+            if (node.getNodeType() != Node.ELEMENT_NODE || !"item".equals(node.getNodeName())) {
+                continue;
+            }
+            final Element item = (Element) node;
+            names.add(parseDrawable(item.getAttributeNS(ANDROID_NS, "drawable")));
+            durations.add(parseDuration(item.getAttributeNS(ANDROID_NS, "duration")));
+        }
+        final Map<String, Integer> firstFrames = new HashMap<>();
+        for (int frameIndex = 0; frameIndex < names.size(); frameIndex++) {
+            final String name = names.get(frameIndex);
+            final File image = findImage(name);
+            int width = -1;
+            int height = -1;
+            int density = 0;
+            boolean opaque = false;
+            String key = name;
+            if (image != null) {
+                density = getDensity(image.getParentFile().getName());
+                final BufferedImage bitmap = ImageIO.read(image);
+                if (bitmap != null) {
+                    width = bitmap.getWidth();
+                    height = bitmap.getHeight();
+                    opaque = isOpaque(bitmap);
+                }
+                // Frames with identical images at the same density share one resource.
+                key = density + ":" + digest(image);
+            }
+            Integer duplicateOf = firstFrames.get(key);
+            if (duplicateOf == null) {
+                duplicateOf = frameIndex;
+                firstFrames.put(key, frameIndex);
+            }
+            Integer resource = mResources.get(name);
+            if (resource == null) {
+                resource = mResources.size();
+                mResources.put(name, resource);
+            }
+            index.addFrame(new AnimationIndex.Frame(resource, durations.get(frameIndex), width,
+                    height, density, opaque, duplicateOf));
+        }
+        return index;
+    }
+
+    private String readPackage(DocumentBuilder builder) throws IOException {
+        final String packageName;
+        try {
+            packageName = builder.parse(mManifestFile).getDocumentElement()
+                    .getAttribute("package");
+        } catch (SAXException e) {
+            throw new GradleException("Cannot parse " + mManifestFile, e);
+        }
+        if (packageName.isEmpty()) {
+            throw new GradleException("No package in " + mManifestFile);
+        }
+        return packageName;
+    }
+
+    /**
+     * Writes the table of resource ids the indexes refer to, compiled with the R class.
+     */
+    private void writeTable(String packageName) throws IOException {
+        final File dir = new File(mSourceOutputDir, packageName.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new GradleException("Cannot create " + dir);
+        }
+        final Writer out = new OutputStreamWriter(
+                new FileOutputStream(new File(dir, TABLE_CLASS + ".java")), "UTF-8");
+        try {
+            out.write("package " + packageName + ";\n\n");
+            out.write("/**\n");
+            out.write(" * The frame drawables of the animation indexes, generated by the "
+                    + AnimationIndexPlugin.TASK_NAME + " task.\n");
+            out.write(" */\n");
+            out.write("public final class " + TABLE_CLASS + " {\n");
+            out.write("    public static final int[] DRAWABLES = {\n");
+            for (String name : mResources.keySet()) {
+                out.write("            R." + name.replace('/', '.') + ",\n");
+            }
+            out.write("    };\n\n");
+            out.write("    private " + TABLE_CLASS + "() {\n");
+            out.write("    }\n");
+            out.write("}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (value.isEmpty() || value.equals("false")) {
+            return false;
+        }
+        if (value.equals("true")) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unsupported boolean: " + value);
+    }
+
+    /**
+     * @return the resource name of a drawable reference, e.g. {@code drawable/homer_001}
+     */
+    private static String parseDrawable(String value) {
+        if (value.startsWith("@drawable/") || value.startsWith("@mipmap/")) {
+            return value.substring(1);
+        }
+        throw new IllegalArgumentException("Unsupported drawable reference: '" + value + "'");
+    }
+
+    private static int parseDuration(String value) {
+        try {
+            final int duration = Integer.parseInt(value);
+            if (duration >= 0) {
+                return duration;
+            }
+        } catch (NumberFormatException e) {
+            // Falls through.
+        }
+        throw new IllegalArgumentException("Unsupported duration: '" + value + "'");
+    }
+
+    /**
+     * @return the highest density variant of an image resource, or null if it is not an image
+     */
+    private File findImage(String name) {
+        final int slash = name.indexOf('/');
+        final String type = name.substring(0, slash);
+        final String entry = name.substring(slash + 1);
+        File best = null;
+        int bestDensity = -1;
+        for (File resDir : mResDirs) {
+            final File[] dirs = resDir.listFiles();
+            if (dirs == null) {
+                continue;
+            }
+            for (File dir : dirs) {
+                final String dirName = dir.getName();
+                if (!dirName.equals(type) && !dirName.startsWith(type + "-")) {
+                    continue;
+                }
+                for (String extension : IMAGE_EXTENSIONS) {
+                    final File file = new File(dir, entry + extension);
+                    final int density = getDensity(dirName);
+                    if (file.isFile() && density > bestDensity) {
+                        best = file;
+                        bestDensity = density;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the density of a resource directory, or 0 for nodpi
+     */
+    static int getDensity(String dirName) {
+        for (String qualifier : dirName.split("-")) {
+            switch (qualifier) {
+                case "ldpi":
+                    return 120;
+                case "mdpi":
+                    return 160;
+                case "tvdpi":
+                    return 213;
+                case "hdpi":
+                    return 240;
+                case "xhdpi":
+                    return 320;
+                case "xxhdpi":
+                    return 480;
+                case "xxxhdpi":
+                    return 640;
+                case "nodpi":
+                    return 0;
+                default:
+                    if (qualifier.matches("\\d+dpi")) {
+                        return Integer.parseInt(qualifier.substring(0, qualifier.length() - 3));
+                    }
+            }
+        }
+        return 160;
+    }
+
+    private static boolean isOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return true;
+        }
+        final int width = image.getWidth();
+        final int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                if ((argb >>> 24) != 0xff) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String digest(File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new GradleException("SHA-1 is not available", e);
+        }
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.toString(digest.digest());
+    }
+}
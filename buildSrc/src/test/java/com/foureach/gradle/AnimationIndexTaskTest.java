@@ -0,0 +1,172 @@
+package com.foureach.gradle;
+
+import com.foureach.graphics.animation.AnimationIndex;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class AnimationIndexTaskTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mResDir;
+    private AnimationIndexTask mTask;
+
+    @Before
+    public void setUp() throws Exception {
+        mResDir = mFolder.newFolder("res");
+        final File manifest = mFolder.newFile("AndroidManifest.xml");
+        write(manifest, "<manifest package=\"com.example.app\"/>");
+        final Project project = ProjectBuilder.builder().withProjectDir(mFolder.getRoot()).build();
+        mTask = project.getTasks().create("index", AnimationIndexTask.class);
+        mTask.resDir(mResDir);
+        mTask.setManifestFile(manifest);
+        mTask.setOutputDir(new File(mFolder.getRoot(), "out/res"));
+        mTask.setSourceOutputDir(new File(mFolder.getRoot(), "out/source"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void image(String path, int argb) throws IOException {
+        final BufferedImage image = new BufferedImage(4, 2, (argb >>> 24) == 0xff
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 4; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        final File file = new File(mResDir, path);
+        file.getParentFile().mkdirs();
+        ImageIO.write(image, "png", file);
+    }
+
+    private void animation(String path, String oneShot, String... items) throws IOException {
+        final StringBuilder xml = new StringBuilder("<animation-list xmlns:android="
+                + "\"http://schemas.android.com/apk/res/android\" android:oneshot=\"" + oneShot
+                + "\">");
+        for (int i = 0; i < items.length; i += 2) {
+            xml.append("<item android:drawable=\"").append(items[i])
+                    .append("\" android:duration=\"").append(items[i + 1]).append("\"/>");
+        }
+        write(new File(mResDir, path), xml.append("</animation-list>").toString());
+    }
+
+    private AnimationIndex readIndex(String path) throws IOException {
+        return AnimationIndex.read(Files.readAllBytes(
+                new File(mTask.getOutputDir(), path).toPath()));
+    }
+
+    private String readTable() throws IOException {
+        return new String(Files.readAllBytes(new File(mTask.getSourceOutputDir(),
+                "com/example/app/AnimationFrames.java").toPath()), "UTF-8");
+    }
+
+    @Test
+    public void getDensity_readsDensityQualifiers() throws Exception {
+        assertEquals(160, AnimationIndexTask.getDensity("drawable"));
+        assertEquals(240, AnimationIndexTask.getDensity("drawable-hdpi"));
+        assertEquals(640, AnimationIndexTask.getDensity("drawable-land-xxxhdpi-v21"));
+        assertEquals(400, AnimationIndexTask.getDensity("mipmap-400dpi"));
+        assertEquals(0, AnimationIndexTask.getDensity("drawable-nodpi"));
+    }
+
+    @Test
+    public void generate_indexesFramesWithSizeAndDuplicates() throws Exception {
+        image("drawable-xhdpi/a.png", 0xff336699);
+        image("drawable-xhdpi/b.png", 0xff336699);
+        image("drawable-mdpi/c.png", 0xff336699);
+        animation("drawable/anim.xml", "true",
+                "@drawable/a", "10", "@drawable/b", "20", "@drawable/c", "30");
+
+        mTask.generate();
+        AnimationIndex index = readIndex("raw/anim_index.bin");
+        assertTrue(index.isOneShot());
+        assertEquals(3, index.getSize());
+        AnimationIndex.Frame a = index.getFrame(0);
+        assertEquals(4, a.width);
+        assertEquals(2, a.height);
+        assertEquals(320, a.density);
+        assertEquals(20, index.getFrame(1).duration);
+        // Identical images at the same density are duplicates, at another density they are not.
+        assertEquals(0, index.getFrame(1).duplicateOf);
+        assertEquals(2, index.getFrame(2).duplicateOf);
+        assertEquals(160, index.getFrame(2).density);
+    }
+
+    @Test
+    public void generate_recordsOpacity() throws Exception {
+        image("drawable/opaque.png", 0xff000000);
+        image("drawable/translucent.png", 0x80000000);
+        animation("drawable/opaque_anim.xml", "false", "@drawable/opaque", "10");
+        animation("drawable/mixed_anim.xml", "false",
+                "@drawable/opaque", "10", "@drawable/translucent", "10");
+
+        mTask.generate();
+        assertTrue(readIndex("raw/opaque_anim_index.bin").isOpaque());
+        AnimationIndex mixed = readIndex("raw/mixed_anim_index.bin");
+        assertTrue(mixed.getFrame(0).opaque);
+        assertFalse(mixed.getFrame(1).opaque);
+        assertFalse(mixed.isOpaque());
+    }
+
+    @Test
+    public void generate_sharesOneResourceTableAcrossIndexes() throws Exception {
+        image("drawable/a.png", 0xff000000);
+        image("drawable/b.png", 0xffffffff);
+        animation("drawable/first.xml", "false", "@drawable/a", "10", "@drawable/b", "10");
+        animation("drawable-land/second.xml", "false", "@drawable/b", "10",
+                "@mipmap/c", "10");
+
+        mTask.generate();
+        assertEquals(1, readIndex("raw/first_index.bin").getFrame(1).resource);
+        AnimationIndex second = readIndex("raw-land/second_index.bin");
+        assertEquals(1, second.getFrame(0).resource);
+        assertEquals(2, second.getFrame(1).resource);
+        // A frame without a readable image has an unknown size.
+        assertEquals(-1, second.getFrame(1).width);
+
+        String table = readTable();
+        assertTrue(table.startsWith("package com.example.app;"));
+        assertTrue(table.contains("R.drawable.a,\n            R.drawable.b,\n"
+                + "            R.mipmap.c,\n"));
+    }
+
+    @Test
+    public void generate_skipsUnsupportedListsWithWarning() throws Exception {
+        image("drawable/a.png", 0xff000000);
+        animation("drawable/framework.xml", "false",
+                "@drawable/a", "10", "@android:drawable/star_on", "10");
+        animation("drawable/durations.xml", "false", "@drawable/a", "@integer/duration");
+        animation("drawable/oneshot.xml", "@bool/oneshot", "@drawable/a", "10");
+        write(new File(mResDir, "drawable/selector.xml"), "<selector/>");
+
+        mTask.generate();
+        assertFalse(new File(mTask.getOutputDir(), "raw").exists());
+        // Skipped lists add nothing to the table.
+        assertFalse(readTable().contains("R.drawable.a"));
+    }
+}
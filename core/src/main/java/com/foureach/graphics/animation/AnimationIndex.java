@@ -0,0 +1,214 @@
+package com.foureach.graphics.animation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact description of an animation list, generated at build time so that the animation can
+ * be loaded in one read, without parsing its XML or decoding a frame to learn its size.
+ *
+ * <p>Resource ids are only assigned when the app is packaged, so frames refer to their drawables
+ * by their position in a table of resource ids generated with the index, such as
+ * {@code AnimationFrames.DRAWABLES}, which is compiled from {@code R.drawable} references and
+ * shared by all indexes of an app. Each frame also records the size of its image, the density it
+ * was measured at, whether it is opaque, and the first frame with identical content, so duplicate
+ * frames can share one decoded or cached copy.
+ */
+public class AnimationIndex {
+    private static final int MAGIC = 0x52414958;
+
+    private static final int VERSION = 2;
+
+    private static final int FLAG_OPAQUE = 1;
+
+    /**
+     * A frame of an {@link AnimationIndex}.
+     */
+    public static class Frame {
+        /**
+         * The position of the drawable in the table of resource ids generated with the index.
+         */
+        public final int resource;
+
+        public final int duration;
+
+        /**
+         * The size of the image in pixels at {@link #density}, or -1 if unknown.
+         */
+        public final int width;
+        public final int height;
+
+        /**
+         * The density the size was measured at, or 0 if the image is not scaled.
+         */
+        public final int density;
+
+        public final boolean opaque;
+
+        /**
+         * The index of the first frame with identical content; its own index if there is none.
+         */
+        public final int duplicateOf;
+
+        public Frame(int resource, int duration, int width, int height, int density,
+                boolean opaque, int duplicateOf) {
+            this.resource = resource;
+            this.duration = duration;
+            this.width = width;
+            this.height = height;
+            this.density = density;
+            this.opaque = opaque;
+            this.duplicateOf = duplicateOf;
+        }
+
+        /**
+         * @return the size scaled from {@link #density} to a target density, rounded like
+         * scaled bitmaps are
+         */
+        public int getScaledWidth(int targetDensity) {
+            return scale(width, targetDensity);
+        }
+
+        public int getScaledHeight(int targetDensity) {
+            return scale(height, targetDensity);
+        }
+
+        private int scale(int size, int targetDensity) {
+            if (size < 0 || density == 0 || targetDensity == 0 || density == targetDensity) {
+                return size;
+            }
+            return (size * targetDensity + (density >> 1)) / density;
+        }
+    }
+
+    private final List<Frame> mFrames = new ArrayList<>();
+
+    private boolean mOneShot = false;
+
+    public void addFrame(Frame frame) {
+        if (frame.resource < 0) {
+            throw new IllegalArgumentException("Invalid resource of frame " + mFrames.size()
+                    + ": " + frame.resource);
+        }
+        if (frame.duplicateOf < 0 || frame.duplicateOf > mFrames.size()) {
+            throw new IllegalArgumentException("Invalid duplicate of frame " + mFrames.size()
+                    + ": " + frame.duplicateOf);
+        }
+        mFrames.add(frame);
+    }
+
+    public Frame getFrame(int index) {
+        return mFrames.get(index);
+    }
+
+    public int getSize() {
+        return mFrames.size();
+    }
+
+    public boolean isOneShot() {
+        return mOneShot;
+    }
+
+    public void setOneShot(boolean oneShot) {
+        mOneShot = oneShot;
+    }
+
+    /**
+     * @return true if every frame is known to be opaque
+     */
+    public boolean isOpaque() {
+        for (Frame frame : mFrames) {
+            if (!frame.opaque) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the timeline of the animation. Duplicate frames get the resource id of the frame
+     * they duplicate.
+     *
+     * @param resources the table of resource ids generated with the index
+     * @throws IllegalArgumentException if a frame is not in the table
+     */
+    public TimelineIndex toTimeline(int[] resources) {
+        final int size = mFrames.size();
+        final int[] ids = new int[size];
+        final int[] durations = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Frame frame = mFrames.get(i);
+            final int resource = mFrames.get(frame.duplicateOf).resource;
+            if (resource >= resources.length) {
+                throw new IllegalArgumentException("Frame " + i + " refers to resource "
+                        + resource + " of a table of " + resources.length);
+            }
+            ids[i] = resources[resource];
+            durations[i] = frame.duration;
+        }
+        final TimelineIndex timeline = new TimelineIndex(ids, durations);
+        timeline.setOneShot(mOneShot);
+        return timeline;
+    }
+
+    /**
+     * Writes the index.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeBoolean(mOneShot);
+        data.writeShort(mFrames.size());
+        for (Frame frame : mFrames) {
+            data.writeInt(frame.resource);
+            data.writeInt(frame.duration);
+            data.writeShort(frame.width);
+            data.writeShort(frame.height);
+            data.writeShort(frame.density);
+            data.writeByte(frame.opaque ? FLAG_OPAQUE : 0);
+            data.writeShort(frame.duplicateOf);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(OutputStream)}.
+     *
+     * @throws IOException if the data is not a valid index
+     */
+    public static AnimationIndex read(byte[] bytes) throws IOException {
+        final DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an animation index");
+        }
+        final int version = data.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported animation index version: " + version);
+        }
+        final AnimationIndex index = new AnimationIndex();
+        index.setOneShot(data.readBoolean());
+        final int size = data.readUnsignedShort();
+        for (int i = 0; i < size; i++) {
+            final int resource = data.readInt();
+            final int duration = data.readInt();
+            final int width = data.readShort();
+            final int height = data.readShort();
+            final int density = data.readUnsignedShort();
+            final boolean opaque = (data.readByte() & FLAG_OPAQUE) != 0;
+            final int duplicateOf = data.readUnsignedShort();
+            try {
+                index.addFrame(new Frame(resource, duration, width, height, density, opaque,
+                        duplicateOf));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,12 @@
+package com.foureach.graphics.animation;
+
+/**
+ * A source of monotonic time used to schedule animation frames. The Android drawables use
+ * {@code SystemClock.uptimeMillis()}, while headless simulations substitute a virtual clock.
+ */
+public interface Clock {
+    /**
+     * @return the current time in milliseconds
+     */
+    long uptimeMillis();
+}
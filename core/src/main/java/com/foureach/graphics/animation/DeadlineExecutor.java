@@ -0,0 +1,153 @@
+package com.foureach.graphics.animation;
+
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor that runs tasks earliest-deadline-first on a fixed number of threads. It is meant
+ * to be shared by all animations, so that a frame needed in 16 ms is decoded before one needed in
+ * 200 ms no matter which animation submitted them. Tasks whose deadline has already passed when a
+ * worker picks them up are dropped, since decoding them would only delay the frames that can
+ * still be shown in time, unless they are {@link RequiredTask}s.
+ *
+ * <p>Tasks that do not implement {@link Task} never expire and run after all deadline tasks.
+ */
+public class DeadlineExecutor implements Executor {
+    /**
+     * A task that must complete before a deadline.
+     */
+    public interface Task extends Runnable {
+        /**
+         * @return the time in {@link Clock#uptimeMillis()} base by which the task is needed
+         */
+        long getDeadline();
+    }
+
+    /**
+     * A task that is ordered by its deadline like any other, but still runs once the deadline has
+     * passed, because it is needed late rather than not at all.
+     */
+    public interface RequiredTask extends Task {
+    }
+
+    /**
+     * The maximum number of threads of a pool created by {@link #newDecodePool(Clock)}.
+     */
+    public static final int MAX_DECODE_THREADS = 4;
+
+    private static final Comparator<Runnable> EARLIEST_DEADLINE_FIRST = new Comparator<Runnable>() {
+        @Override
+        public int compare(Runnable lhs, Runnable rhs) {
+            QueuedTask l = (QueuedTask) lhs;
+            QueuedTask r = (QueuedTask) rhs;
+            if (l.mDeadline != r.mDeadline) {
+                return l.mDeadline < r.mDeadline ? -1 : 1;
+            }
+            return l.mSequence < r.mSequence ? -1 : (l.mSequence == r.mSequence ? 0 : 1);
+        }
+    };
+
+    private final Clock mClock;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * @param clock the clock deadlines are measured against
+     * @param threadCount the number of worker threads
+     * @param name the prefix of the worker thread names
+     */
+    public DeadlineExecutor(Clock clock, int threadCount, final String name) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive: " + threadCount);
+        }
+        mClock = clock;
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + mCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(16, EARLIEST_DEADLINE_FIRST), threadFactory);
+    }
+
+    /**
+     * Creates the pool that decodes the frames of all animations in the process. It has a thread
+     * per core but one, which is left to the thread that draws the animations, and is bounded by
+     * {@link #MAX_DECODE_THREADS} so that many concurrent animations cannot spawn an unbounded
+     * number of threads.
+     *
+     * @param clock the clock deadlines are measured against
+     */
+    public static DeadlineExecutor newDecodePool(Clock clock) {
+        final int threadCount = Math.max(1, Math.min(MAX_DECODE_THREADS,
+                Runtime.getRuntime().availableProcessors() - 1));
+        return new DeadlineExecutor(clock, threadCount, "FrameDecoder");
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        final long deadline = command instanceof Task ? ((Task) command).getDeadline()
+                : Long.MAX_VALUE;
+        mExecutor.execute(new QueuedTask(command, deadline, command instanceof RequiredTask,
+                mSequence.getAndIncrement()));
+    }
+
+    /**
+     * @return the number of tasks dropped because their deadline had passed
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreadCount() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker
+     */
+    public int getQueueSize() {
+        return mExecutor.getQueue().size();
+    }
+
+    private class QueuedTask implements Runnable {
+        final Runnable mTask;
+        final long mDeadline;
+        final boolean mRequired;
+        final long mSequence;
+
+        QueuedTask(Runnable task, long deadline, boolean required, long sequence) {
+            mTask = task;
+            mDeadline = deadline;
+            mRequired = required;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (!mRequired && mDeadline < mClock.uptimeMillis()) {
+                mDroppedCount.incrementAndGet();
+                return;
+            }
+            mTask.run();
+        }
+    }
+}
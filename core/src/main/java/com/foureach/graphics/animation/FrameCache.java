@@ -0,0 +1,78 @@
+package com.foureach.graphics.animation;
+
+/**
+ * A frame held in the prefetch window of a {@link FramePlayer}. Running it decodes the frame,
+ * unless it was cancelled because the player no longer needs it. If the decoder is also a
+ * {@link FramePreparer}, the frame is prepared for drawing before it becomes visible to the
+ * player.
+ *
+ * @param <T> the type of decoded frames
+ */
+public class FrameCache<T> implements DeadlineExecutor.Task {
+    final FrameDecoder<T> mDecoder;
+    final int mIndex;
+    final int mDuration;
+    volatile T mFrame;
+    volatile boolean mCancelled = false;
+    long mDeadline = Long.MAX_VALUE;
+    boolean mSkipped = false;
+
+    FrameCache(FrameDecoder<T> decoder, int index, int duration) {
+        mDecoder = decoder;
+        mIndex = index;
+        mDuration = duration;
+    }
+
+    void loadFrame() {
+        // The frame is about to be drawn anyway, so it is not prepared separately.
+        mFrame = mDecoder.decodeFrame(mIndex);
+    }
+
+    void cancel() {
+        mCancelled = true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        if (mCancelled) {
+            return;
+        }
+        final T frame = mDecoder.decodeFrame(mIndex);
+        if (frame != null && !mCancelled && mDecoder instanceof FramePreparer) {
+            ((FramePreparer<T>) mDecoder).prepareFrame(frame);
+        }
+        mFrame = frame;
+    }
+
+    @Override
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public int getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return the decoded frame, or null if it is not decoded yet
+     */
+    public T getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * @return true if the frame was not decoded in time and the previous frame is shown instead
+     */
+    public boolean isSkipped() {
+        return mSkipped;
+    }
+}
@@ -0,0 +1,17 @@
+package com.foureach.graphics.animation;
+
+/**
+ * Decodes the content of animation frames. Implementations must be safe to call from the
+ * prefetch executor as well as from the thread that owns the {@link FramePlayer}.
+ *
+ * @param <T> the type of decoded frames
+ */
+public interface FrameDecoder<T> {
+    /**
+     * Decodes a frame.
+     *
+     * @param index the index of the frame
+     * @return the decoded frame, or null if the frame cannot be decoded
+     */
+    T decodeFrame(int index);
+}
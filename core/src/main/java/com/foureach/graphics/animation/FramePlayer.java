@@ -0,0 +1,695 @@
+package com.foureach.graphics.animation;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays the frames of a {@link FrameTable}, prefetching the upcoming frames on an
+ * {@link Executor}. Each prefetch request carries the time at which its frame will be shown, so
+ * a {@link DeadlineExecutor} shared by several players decodes the most urgent frames first.
+ *
+ * <p>The player has no dependency on the Android framework: time comes from a {@link Clock},
+ * ticks are posted through a {@link TickScheduler} and frames are decoded by a
+ * {@link FrameDecoder}, so the same sequencing logic drives the drawables and headless
+ * simulations.
+ *
+ * <p>All methods except the decoding itself must be called on the thread that ticks the player.
+ *
+ * @param <T> the type of decoded frames
+ */
+public class FramePlayer<T> {
+    public static final int DEFAULT_WINDOW_SIZE = 5;
+
+    /**
+     * Receives the events of a {@link FramePlayer}.
+     *
+     * @param <T> the type of decoded frames
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the animation starts.
+         */
+        void onAnimationStart();
+
+        /**
+         * Called when a frame becomes the current frame and should be drawn.
+         *
+         * @param index the index of the frame
+         * @param frame the decoded frame, or null if it could not be decoded
+         */
+        void onFrameSelected(int index, T frame);
+
+        /**
+         * Called when the next frame is scheduled to be drawn.
+         *
+         * @param index the index of the frame
+         * @param frame the decoded frame
+         * @param skipped true if the frame was not decoded in time and the previous one is reused
+         */
+        void onNextFrame(int index, T frame, boolean skipped);
+
+        /**
+         * Called when a one-shot animation reaches its last frame.
+         */
+        void onAnimationEnd();
+    }
+
+    /**
+     * Receives the end of {@link #prepare(Executor, PrepareCallback)}.
+     */
+    public interface PrepareCallback {
+        /**
+         * @param prepared true if the prepared frames were handed to the player, false if they
+         *                 were discarded, e.g. because the player moved to another frame
+         */
+        void onPrepared(boolean prepared);
+    }
+
+    /**
+     * The playback position, direction, speed and decoded frames of a player, used to hand them
+     * over to another player, e.g. across configuration changes.
+     *
+     * @param <T> the type of decoded frames
+     */
+    public static final class Snapshot<T> {
+        final int mCurFrame;
+        final boolean mReverse;
+        final float mSpeed;
+        final boolean mRunning;
+        final FrameCache<T> mCurrent;
+        final List<FrameCache<T>> mCachedFrames;
+
+        Snapshot(int curFrame, boolean reverse, float speed, boolean running,
+                FrameCache<T> current, List<FrameCache<T>> cachedFrames) {
+            mCurFrame = curFrame;
+            mReverse = reverse;
+            mSpeed = speed;
+            mRunning = running;
+            mCurrent = current;
+            mCachedFrames = cachedFrames;
+        }
+
+        public int getCurrentFrameIndex() {
+            return mCurFrame;
+        }
+
+        public boolean isReverse() {
+            return mReverse;
+        }
+
+        public float getSpeed() {
+            return mSpeed;
+        }
+
+        /**
+         * @return true if the player was running when the snapshot was taken
+         */
+        public boolean isRunning() {
+            return mRunning;
+        }
+    }
+
+    private final FrameTable mFrameTable;
+
+    private final FrameDecoder<T> mDecoder;
+
+    private final Clock mClock;
+
+    private final TickScheduler mScheduler;
+
+    private final Executor mExecutor;
+
+    private final Callback<T> mCallback;
+
+    private final FrameStepper mStepper;
+
+    private final LinkedList<FrameCache<T>> mCachedFrames = new LinkedList<>();
+
+    private int mWindowSize = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * The current frame, ranging from 0 to {@link FrameTable#getSize()} - 1
+     */
+    private int mCurFrame = 0;
+
+    /**
+     * Whether a tick is scheduled.
+     */
+    private boolean mRunning;
+
+    /**
+     * Whether the player should animate when visible.
+     */
+    private boolean mAnimating = false;
+
+    private FrameCache<T> mCurrent;
+
+    /**
+     * The pending {@link #prepare(Executor, PrepareCallback)}, or null.
+     */
+    private Preparation mPreparation;
+
+    public FramePlayer(FrameTable frameTable, FrameDecoder<T> decoder, Clock clock,
+            TickScheduler scheduler, Executor executor, Callback<T> callback) {
+        mFrameTable = frameTable;
+        mDecoder = decoder;
+        mClock = clock;
+        mScheduler = scheduler;
+        mExecutor = executor;
+        mCallback = callback;
+        mStepper = new FrameStepper(frameTable);
+    }
+
+    /**
+     * Starts the animation from the current frame. This method has no effect if the animation is
+     * running.
+     */
+    public void start() {
+        mAnimating = true;
+
+        if (!mRunning) {
+            mCallback.onAnimationStart();
+            // Start from current frame.
+            setFrame(mCurFrame, false, mFrameTable.getSize() > 1 || !mFrameTable.isOneShot());
+        }
+    }
+
+    /**
+     * Stops the animation and drops the prefetched frames. This method has no effect if the
+     * animation is not running.
+     */
+    public void stop() {
+        mAnimating = false;
+
+        if (mRunning) {
+            unschedule();
+            clearCachedFrames();
+        }
+    }
+
+    /**
+     * Cancels the pending tick without dropping the prefetched frames.
+     */
+    public void unschedule() {
+        mRunning = false;
+        mScheduler.unscheduleTick();
+    }
+
+    /**
+     * Advances to the next frame. Called by the {@link TickScheduler}.
+     */
+    public void tick() {
+        nextFrame(false);
+    }
+
+    private void nextFrame(boolean unschedule) {
+        // Loops if necessary and skips frames at high playback rates.
+        final int nextFrame = mStepper.next(mCurFrame);
+        final boolean isLastFrame = mStepper.isLastFrame(nextFrame);
+        setFrame(nextFrame, unschedule, !isLastFrame);
+        if (isLastFrame) {
+            mCallback.onAnimationEnd();
+        }
+    }
+
+    /**
+     * Shows a frame and optionally schedules the following one.
+     *
+     * @param index the frame to show
+     * @param unschedule true to cancel the pending tick
+     * @param animate true to keep animating from this frame
+     */
+    public void setFrame(int index, boolean unschedule, boolean animate) {
+        if (index < 0 || index >= mFrameTable.getSize()) {
+            return;
+        }
+        if (index == mCurFrame && !mRunning && mPreparation != null) {
+            if (!animate) {
+                // The frame being prepared stays current.
+                mAnimating = false;
+                return;
+            }
+            adoptPreparation();
+        } else {
+            discardPreparation();
+        }
+        mAnimating = animate;
+        selectFrame(index, animate);
+        if (unschedule || animate) {
+            unschedule();
+        }
+        if (animate) {
+            // Unscheduling may have clobbered these values; restore them
+            mCurFrame = index;
+            mRunning = true;
+            mScheduler.scheduleTick(mClock.uptimeMillis() + mStepper.getDisplayTime(index));
+        }
+        if (mRunning) {
+            mCallback.onNextFrame(mCurrent.mIndex, mCurrent.mFrame, mCurrent.mSkipped);
+        }
+        if (!animate) {
+            clearCachedFrames();
+            mRunning = false;
+        }
+    }
+
+    /**
+     * Shows a frame without animating.
+     *
+     * @param index the frame to show
+     * @return true if the current frame changed
+     */
+    public boolean seek(int index) {
+        if (index == mCurFrame) {
+            return false;
+        }
+        discardPreparation();
+        if (!mRunning) {
+            // Drop the window prepared for the previous frame.
+            clearCachedFrames();
+        }
+        selectFrame(index, false);
+        return true;
+    }
+
+    private void selectFrame(int frame, boolean animate) {
+        mCurFrame = frame;
+        if (animate) {
+            final int numFrames = mFrameTable.getSize();
+            // Keep a window prefetched for this frame, e.g. by prepare(), if it still follows,
+            // even when the frame itself still has to be decoded below.
+            final FrameCache<T> head = mCachedFrames.peek();
+            if (head == null || head.mIndex != mStepper.next(frame)) {
+                if (mCurrent != null && mCurrent.mIndex == frame) {
+                    clearCachedFrames();
+                }
+                for (FrameCache<T> f; !mCachedFrames.isEmpty()
+                        && (mCurrent == null || mCurrent.mIndex != frame);) {
+                    f = mCachedFrames.poll();
+                    if (f.mIndex == frame) {
+                        if (f.mFrame != null) {
+                            mCurrent = f;
+                            mCurrent.mSkipped = false;
+                        } else if (f.mIndex != numFrames - 1 && mCurrent != null) {
+                            f.mFrame = mCurrent.mFrame;
+                            mCurrent = f;
+                            mCurrent.mSkipped = true;
+                        }
+                        break;
+                    }
+                    f.cancel();
+                }
+            }
+
+            // The frames of the window are shown one after another once the current one ends.
+            // Only the frames the stepper will actually show are prefetched.
+            long deadline = mClock.uptimeMillis() + mStepper.getDisplayTime(frame);
+            // Frames must also be prepared for drawing by the time they are shown.
+            final long prepareTime = mDecoder instanceof FramePreparer
+                    ? ((FramePreparer<?>) mDecoder).getPrepareTime() : 0;
+            int lastFrame = frame;
+            for (FrameCache<T> f : mCachedFrames) {
+                if (f.mFrame == null && f.mDeadline == Long.MAX_VALUE) {
+                    // Adopted from prepare() before it was decoded.
+                    f.mDeadline = deadline - prepareTime;
+                    mExecutor.execute(f);
+                }
+                deadline += mStepper.getDisplayTime(f.mIndex);
+                lastFrame = f.mIndex;
+            }
+
+            while (mCachedFrames.size() < mWindowSize && !mStepper.isLastFrame(lastFrame)) {
+                final int nextFrame = mStepper.next(lastFrame);
+                FrameCache<T> f = new FrameCache<>(mDecoder, nextFrame,
+                        mFrameTable.getDuration(nextFrame));
+                f.mDeadline = deadline - prepareTime;
+                deadline += mStepper.getDisplayTime(nextFrame);
+                mExecutor.execute(f);
+                mCachedFrames.add(f);
+                lastFrame = nextFrame;
+            }
+        }
+        if (mCurrent == null || mCurrent.mIndex != frame) {
+            mCurrent = new FrameCache<>(mDecoder, frame, mFrameTable.getDuration(frame));
+            mCurrent.loadFrame();
+        }
+        mCallback.onFrameSelected(mCurrent.mIndex, mCurrent.mFrame);
+    }
+
+    /**
+     * Stops ticking and moves the playback position and the decoded frames into a snapshot. The
+     * prefetched frames keep decoding. The player must not be used afterwards.
+     *
+     * @return the snapshot to pass to {@link #restoreState(Snapshot)} of another player
+     */
+    public Snapshot<T> saveState() {
+        discardPreparation();
+        Snapshot<T> snapshot = new Snapshot<>(mCurFrame, isReverse(), getSpeed(), mRunning,
+                mCurrent, new ArrayList<>(mCachedFrames));
+        unschedule();
+        mCachedFrames.clear();
+        mCurrent = null;
+        return snapshot;
+    }
+
+    /**
+     * Takes over the playback position and the decoded frames of another player playing the same
+     * frames. A snapshot of a running player leaves this player animating, and
+     * {@link #resume()} continues the animation without decoding anything.
+     *
+     * @param snapshot the snapshot taken by {@link #saveState()}
+     */
+    public void restoreState(Snapshot<T> snapshot) {
+        discardPreparation();
+        unschedule();
+        clearCachedFrames();
+        mCurFrame = snapshot.mCurFrame;
+        mStepper.setReverse(snapshot.mReverse);
+        mStepper.setSpeed(snapshot.mSpeed);
+        mAnimating = snapshot.mRunning;
+        mCurrent = snapshot.mCurrent;
+        mCachedFrames.addAll(snapshot.mCachedFrames);
+        if (mCurrent != null) {
+            mCallback.onFrameSelected(mCurrent.mIndex, mCurrent.mFrame);
+        }
+    }
+
+    /**
+     * Continues the animation from the current frame, keeping the prefetched frames. Unlike
+     * {@link #start()}, this does not notify {@link Callback#onAnimationStart()}. This method has
+     * no effect if the animation is running.
+     */
+    public void resume() {
+        if (mRunning || mCurrent == null) {
+            return;
+        }
+        mAnimating = true;
+        mRunning = true;
+        mScheduler.scheduleTick(mClock.uptimeMillis() + mStepper.getDisplayTime(mCurFrame));
+    }
+
+    /**
+     * Drops the current frame and the prefetched frames, e.g. after the frames have changed.
+     */
+    public void reset() {
+        discardPreparation();
+        clearCachedFrames();
+        mCurrent = null;
+    }
+
+    /**
+     * Decodes the current frame and the frames {@link #start()} prefetches on the executor, so
+     * that starting afterwards shows them without decoding on the calling thread. The frames are
+     * handed to the player on the thread that ticks it, through {@code callbackExecutor}, and the
+     * callback runs after that. Starting before the preparation finishes adopts the frames
+     * decoded so far and decodes the others with the deadlines of the animation; moving to
+     * another frame discards them. The callback runs in either case and tells which happened.
+     *
+     * @param callbackExecutor runs tasks on the thread that ticks the player
+     * @param callback called when the preparation finishes, or null
+     */
+    public void prepare(Executor callbackExecutor, PrepareCallback callback) {
+        if (mRunning) {
+            // Already playing from prefetched frames.
+            postPrepared(callbackExecutor, callback, true);
+            return;
+        }
+        if (mPreparation != null && mPreparation.mCallbackExecutor == callbackExecutor) {
+            mPreparation.addCallback(callback);
+            return;
+        }
+        discardPreparation();
+        if (mFrameTable.getSize() == 0) {
+            postPrepared(callbackExecutor, callback, true);
+            return;
+        }
+
+        final int frame = mCurFrame;
+        final FrameCache<T> current = mCurrent != null && mCurrent.mIndex == frame ? null
+                : new FrameCache<>(mDecoder, frame, mFrameTable.getDuration(frame));
+        if (current != null) {
+            // The current frame is shown as soon as the animation starts, so it competes with
+            // the frames of the animations already playing.
+            current.mDeadline = mClock.uptimeMillis() + mStepper.getDisplayTime(frame);
+        }
+        final List<FrameCache<T>> window = new ArrayList<>();
+        int lastFrame = frame;
+        while (window.size() < mWindowSize && !mStepper.isLastFrame(lastFrame)) {
+            final int nextFrame = mStepper.next(lastFrame);
+            window.add(new FrameCache<>(mDecoder, nextFrame, mFrameTable.getDuration(nextFrame)));
+            lastFrame = nextFrame;
+        }
+
+        final Preparation preparation = new Preparation(current, window,
+                callbackExecutor);
+        preparation.addCallback(callback);
+        mPreparation = preparation;
+        preparation.submit();
+    }
+
+    /**
+     * Decodes the current frame on the calling thread unless it is decoded or being prepared,
+     * e.g. right before it is first drawn.
+     */
+    public void loadCurrentFrame() {
+        if (mPreparation == null && mFrameTable.getSize() > 0
+                && (mCurrent == null || mCurrent.mIndex != mCurFrame)) {
+            selectFrame(mCurFrame, false);
+        }
+    }
+
+    /**
+     * @return true if a {@link #prepare(Executor, PrepareCallback)} is decoding frames
+     */
+    public boolean isPreparing() {
+        return mPreparation != null;
+    }
+
+    /**
+     * Takes over the frames of the pending preparation. Decoded frames become the current frame
+     * and the window right away. Frames still waiting behind the work of other animations are
+     * cancelled and replaced, so that they are decoded with the deadlines of the window instead.
+     */
+    private void adoptPreparation() {
+        final Preparation preparation = mPreparation;
+        if (preparation == null) {
+            return;
+        }
+        mPreparation = null;
+        boolean changed = false;
+        if (preparation.mCurrent != null) {
+            if (preparation.mCurrent.mFrame == null) {
+                // Not decoded yet; the current frame is decoded on this thread instead.
+                preparation.mCurrent.cancel();
+            } else {
+                mCurrent = preparation.mCurrent;
+                changed = true;
+            }
+        }
+        clearCachedFrames();
+        for (FrameCache<T> f : preparation.mWindow) {
+            if (f.mFrame == null) {
+                f.cancel();
+                f = new FrameCache<>(mDecoder, f.mIndex, f.mDuration);
+            }
+            mCachedFrames.add(f);
+        }
+        if (changed) {
+            mCallback.onFrameSelected(mCurrent.mIndex, mCurrent.mFrame);
+        }
+        preparation.finish(true);
+    }
+
+    private void discardPreparation() {
+        if (mPreparation != null) {
+            mPreparation.cancel();
+            mPreparation.finish(false);
+            mPreparation = null;
+        }
+    }
+
+    private void onPrepared(Preparation preparation) {
+        if (mPreparation == preparation) {
+            adoptPreparation();
+        }
+    }
+
+    private static void postPrepared(Executor callbackExecutor, final PrepareCallback callback,
+            final boolean prepared) {
+        if (callback == null) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onPrepared(prepared);
+            }
+        });
+    }
+
+    /**
+     * The frames decoded by {@link #prepare(Executor, PrepareCallback)}.
+     */
+    private class Preparation implements Runnable {
+        final FrameCache<T> mCurrent;
+        final List<FrameCache<T>> mWindow;
+        final Executor mCallbackExecutor;
+        final List<PrepareCallback> mCallbacks = new ArrayList<>();
+        final AtomicInteger mRemaining;
+
+        Preparation(FrameCache<T> current, List<FrameCache<T>> window,
+                Executor callbackExecutor) {
+            mCurrent = current;
+            mWindow = window;
+            mCallbackExecutor = callbackExecutor;
+            mRemaining = new AtomicInteger(window.size() + (current != null ? 1 : 0));
+        }
+
+        void addCallback(PrepareCallback callback) {
+            if (callback != null) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * Decodes the current frame by its deadline, but never drops it, and the window without
+         * deadlines, so a {@link DeadlineExecutor} runs the window after the frames of the
+         * animations already playing.
+         */
+        void submit() {
+            if (mRemaining.get() == 0) {
+                mCallbackExecutor.execute(this);
+                return;
+            }
+            if (mCurrent != null) {
+                submit(mCurrent);
+            }
+            for (FrameCache<T> f : mWindow) {
+                submit(f);
+            }
+        }
+
+        private void submit(final FrameCache<T> frame) {
+            mExecutor.execute(new DeadlineExecutor.RequiredTask() {
+                @Override
+                public long getDeadline() {
+                    return frame.mDeadline;
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        frame.run();
+                    } finally {
+                        if (mRemaining.decrementAndGet() == 0) {
+                            mCallbackExecutor.execute(Preparation.this);
+                        }
+                    }
+                }
+            });
+        }
+
+        void cancel() {
+            if (mCurrent != null) {
+                mCurrent.cancel();
+            }
+            for (FrameCache<T> f : mWindow) {
+                f.cancel();
+            }
+        }
+
+        /**
+         * Posts the callbacks once the frames are adopted or discarded.
+         */
+        void finish(boolean prepared) {
+            for (PrepareCallback callback : mCallbacks) {
+                postPrepared(mCallbackExecutor, callback, prepared);
+            }
+            mCallbacks.clear();
+        }
+
+        /**
+         * Runs on the thread that ticks the player once all frames are decoded, unless the frames
+         * were adopted or discarded before.
+         */
+        @Override
+        public void run() {
+            onPrepared(this);
+        }
+    }
+
+    private void clearCachedFrames() {
+        for (FrameCache<T> f : mCachedFrames) {
+            f.cancel();
+        }
+        mCachedFrames.clear();
+    }
+
+    public int getCurrentFrameIndex() {
+        return mCurFrame;
+    }
+
+    /**
+     * @return the decoded current frame, or null if no frame has been selected yet
+     */
+    public T getCurrent() {
+        return mCurrent != null ? mCurrent.mFrame : null;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public boolean isAnimating() {
+        return mAnimating;
+    }
+
+    public void setAnimating(boolean animating) {
+        mAnimating = animating;
+    }
+
+    public boolean isReverse() {
+        return mStepper.isReverse();
+    }
+
+    public void setReverse(boolean reverse) {
+        mStepper.setReverse(reverse);
+    }
+
+    public float getSpeed() {
+        return mStepper.getSpeed();
+    }
+
+    /**
+     * Sets the playback speed. Above 1x the player skips frames that would be shown shorter than
+     * {@link FrameStepper#MIN_FRAME_INTERVAL} and prefetches only the frames it will show.
+     *
+     * @param speed a positive multiple of the speed given by the frame durations
+     */
+    public void setSpeed(float speed) {
+        mStepper.setSpeed(speed);
+    }
+
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Sets how many upcoming frames are decoded ahead of time.
+     *
+     * @param windowSize the number of prefetched frames, at least 1
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        mWindowSize = windowSize;
+    }
+
+    public FrameTable getFrameTable() {
+        return mFrameTable;
+    }
+}
@@ -0,0 +1,23 @@
+package com.foureach.graphics.animation;
+
+/**
+ * Prepares decoded frames for drawing ahead of time, e.g. by uploading bitmaps to the GPU. A
+ * {@link FrameDecoder} that also implements this interface gets its prefetched frames prepared on
+ * the prefetch executor before they enter the window, and the prefetch deadlines are moved earlier
+ * by the preparation time.
+ *
+ * @param <T> the type of decoded frames
+ */
+public interface FramePreparer<T> {
+    /**
+     * Prepares a decoded frame for drawing. Called on the prefetch executor.
+     *
+     * @param frame the decoded frame
+     */
+    void prepareFrame(T frame);
+
+    /**
+     * @return the expected time in milliseconds {@link #prepareFrame(Object)} takes
+     */
+    long getPrepareTime();
+}
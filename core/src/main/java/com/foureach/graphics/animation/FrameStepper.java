@@ -0,0 +1,110 @@
+package com.foureach.graphics.animation;
+
+/**
+ * Decides which frame follows another for a playback rate and direction. At rates above 1x
+ * frames that would be shown for less than {@link #MIN_FRAME_INTERVAL} are skipped on purpose, so
+ * the animation keeps its speed instead of missing its deadlines, and the time of the skipped
+ * frames is added to the frame that is shown.
+ */
+public class FrameStepper {
+    /**
+     * The shortest time in milliseconds a frame is shown at rates above 1x, about one display
+     * refresh.
+     */
+    public static final int MIN_FRAME_INTERVAL = 16;
+
+    private final FrameTable mFrameTable;
+
+    private float mSpeed = 1f;
+
+    private boolean mReverse = false;
+
+    private long mDisplayTime;
+
+    public FrameStepper(FrameTable frameTable) {
+        mFrameTable = frameTable;
+    }
+
+    /**
+     * Finds the frame shown after a frame. Looping animations wrap around, while one-shot
+     * animations stop at their last frame.
+     *
+     * @param frame the frame being shown
+     * @return the index of the next frame
+     */
+    public int next(int frame) {
+        final int numFrames = mFrameTable.getSize();
+        final boolean oneShot = mFrameTable.isOneShot();
+        final int d = !mReverse ? 1 : -1;
+
+        long time = mFrameTable.getDuration(frame);
+        int nextFrame = frame + d;
+        if (mSpeed > 1) {
+            final float budget = MIN_FRAME_INTERVAL * mSpeed;
+            for (int skipped = 0; time < budget && skipped < numFrames - 1; skipped++) {
+                if (oneShot && (nextFrame <= 0 || nextFrame >= numFrames - 1)) {
+                    break;
+                }
+                time += mFrameTable.getDuration(wrap(nextFrame, numFrames));
+                nextFrame += d;
+            }
+        }
+        mDisplayTime = Math.round(time / (double) mSpeed);
+
+        if (oneShot) {
+            return Math.max(0, Math.min(numFrames - 1, nextFrame));
+        }
+        return wrap(nextFrame, numFrames);
+    }
+
+    private static int wrap(int frame, int numFrames) {
+        frame %= numFrames;
+        return frame < 0 ? frame + numFrames : frame;
+    }
+
+    /**
+     * @return how long the frame passed to the last call of {@link #next(int)} is shown, in
+     * milliseconds
+     */
+    public long getDisplayTime() {
+        return mDisplayTime;
+    }
+
+    /**
+     * @return how long a frame is shown at the current rate, including the frames skipped after it
+     */
+    public long getDisplayTime(int frame) {
+        next(frame);
+        return mDisplayTime;
+    }
+
+    /**
+     * @return true if a one-shot animation ends at the given frame in the current direction
+     */
+    public boolean isLastFrame(int frame) {
+        return mFrameTable.isOneShot()
+                && (!mReverse ? frame >= mFrameTable.getSize() - 1 : frame <= 0);
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @param speed the playback speed, a positive multiple of the frame durations' speed
+     */
+    public void setSpeed(float speed) {
+        if (!(speed > 0) || Float.isInfinite(speed)) {
+            throw new IllegalArgumentException("Invalid speed: " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    public boolean isReverse() {
+        return mReverse;
+    }
+
+    public void setReverse(boolean reverse) {
+        mReverse = reverse;
+    }
+}
@@ -0,0 +1,22 @@
+package com.foureach.graphics.animation;
+
+/**
+ * Describes the frames of an animation: how many there are, how long each one is shown and
+ * whether the animation loops.
+ */
+public interface FrameTable {
+    /**
+     * @return The number of frames in the animation
+     */
+    int getSize();
+
+    /**
+     * @return The duration in milliseconds of the frame at the specified index
+     */
+    int getDuration(int index);
+
+    /**
+     * @return True of the animation will play once, false otherwise
+     */
+    boolean isOneShot();
+}
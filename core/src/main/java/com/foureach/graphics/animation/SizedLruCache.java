@@ -0,0 +1,136 @@
+package com.foureach.graphics.animation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe least-recently-used cache keyed by int with a size budget, typically in bytes.
+ * Values larger than the whole budget are not cached.
+ *
+ * @param <V> the type of cached values
+ */
+public class SizedLruCache<V> {
+    /**
+     * Measures cached values.
+     *
+     * @param <V> the type of cached values
+     */
+    public interface Sizer<V> {
+        /**
+         * @return the size of the value in the unit of the budget
+         */
+        int sizeOf(V value);
+    }
+
+    private final LinkedHashMap<Integer, V> mMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Sizer<V> mSizer;
+
+    private int mMaxSize;
+
+    private int mSize;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+    /**
+     * @param sizer measures the cached values
+     * @param maxSize the budget, 0 to disable caching
+     */
+    public SizedLruCache(Sizer<V> sizer, int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Negative maxSize: " + maxSize);
+        }
+        mSizer = sizer;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return the cached value, or null if there is none
+     */
+    public synchronized V get(int key) {
+        V value = mMap.get(key);
+        if (value != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values to stay within the budget.
+     */
+    public synchronized void put(int key, V value) {
+        final int size = mSizer.sizeOf(value);
+        remove(key);
+        if (size > mMaxSize) {
+            return;
+        }
+        mMap.put(key, value);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    public synchronized V remove(int key) {
+        V previous = mMap.remove(key);
+        if (previous != null) {
+            mSize -= mSizer.sizeOf(previous);
+        }
+        return previous;
+    }
+
+    private void trimToSize(int maxSize) {
+        final Iterator<Map.Entry<Integer, V>> it = mMap.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            mSize -= mSizer.sizeOf(it.next().getValue());
+            it.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Changes the budget, evicting values if needed.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Negative maxSize: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SizedLruCache{size=" + mSize + ", maxSize=" + mMaxSize + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "}";
+    }
+}
@@ -0,0 +1,19 @@
+package com.foureach.graphics.animation;
+
+/**
+ * Schedules the next tick of a {@link FramePlayer}. When the scheduled time is reached the
+ * implementation must call {@link FramePlayer#tick()} on the thread that owns the player.
+ */
+public interface TickScheduler {
+    /**
+     * Schedules the next tick.
+     *
+     * @param when the time in {@link Clock#uptimeMillis()} base at which to tick
+     */
+    void scheduleTick(long when);
+
+    /**
+     * Cancels any tick previously scheduled with {@link #scheduleTick(long)}.
+     */
+    void unscheduleTick();
+}
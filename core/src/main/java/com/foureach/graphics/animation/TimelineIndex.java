@@ -0,0 +1,167 @@
+package com.foureach.graphics.animation;
+
+/**
+ * A compact frame table backed by primitive arrays. Besides the resource id and duration of each
+ * frame it keeps the prefix sum of the durations, so the frame shown at a given play time is found
+ * by binary search in O(log n). An animation with thousands of frames costs 12 bytes per frame
+ * instead of one object per frame.
+ */
+public class TimelineIndex implements FrameTable {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] mResIds;
+
+    private int[] mDurations;
+
+    /**
+     * The time at which each frame ends, i.e. the sum of the durations up to and including it.
+     */
+    private int[] mEndTimes;
+
+    private int mSize;
+
+    private boolean mOneShot = false;
+
+    public TimelineIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of frames to allocate room for
+     */
+    public TimelineIndex(int capacity) {
+        mResIds = new int[capacity];
+        mDurations = new int[capacity];
+        mEndTimes = new int[capacity];
+    }
+
+    /**
+     * Creates an index holding the given frames.
+     *
+     * @param resIds the resource id of each frame
+     * @param durations the duration of each frame in milliseconds
+     */
+    public TimelineIndex(int[] resIds, int[] durations) {
+        this(resIds.length);
+        if (resIds.length != durations.length) {
+            throw new IllegalArgumentException("Expected " + resIds.length + " durations but got "
+                    + durations.length);
+        }
+        for (int i = 0; i < resIds.length; i++) {
+            addFrame(resIds[i], durations[i]);
+        }
+    }
+
+    /**
+     * Appends a frame.
+     *
+     * @param resId the resource id of the frame
+     * @param duration the duration of the frame in milliseconds
+     */
+    public void addFrame(int resId, int duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Negative duration: " + duration);
+        }
+        final int start = getTotalDuration();
+        if (start + duration < start) {
+            throw new IllegalArgumentException("Total duration overflows");
+        }
+        if (mSize == mResIds.length) {
+            final int capacity = Math.max(DEFAULT_CAPACITY, mSize * 2);
+            mResIds = grow(mResIds, capacity);
+            mDurations = grow(mDurations, capacity);
+            mEndTimes = grow(mEndTimes, capacity);
+        }
+        mResIds[mSize] = resId;
+        mDurations[mSize] = duration;
+        mEndTimes[mSize] = start + duration;
+        mSize++;
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + mSize);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public int getDuration(int index) {
+        checkIndex(index);
+        return mDurations[index];
+    }
+
+    public int getResourceId(int index) {
+        checkIndex(index);
+        return mResIds[index];
+    }
+
+    /**
+     * @return the play time in milliseconds at which the frame at the specified index starts
+     */
+    public int getStartTime(int index) {
+        checkIndex(index);
+        return mEndTimes[index] - mDurations[index];
+    }
+
+    /**
+     * @return the duration in milliseconds of one pass over all frames
+     */
+    public int getTotalDuration() {
+        return mSize > 0 ? mEndTimes[mSize - 1] : 0;
+    }
+
+    /**
+     * Finds the frame shown at a play time. Looping animations wrap around, while one-shot
+     * animations stay on their last frame.
+     *
+     * @param playTime the time in milliseconds since the start of the animation
+     * @return the index of the frame
+     */
+    public int getFrameAt(long playTime) {
+        if (mSize == 0) {
+            throw new IllegalStateException("The timeline has no frames");
+        }
+        final int total = getTotalDuration();
+        if (playTime <= 0 || total == 0) {
+            return 0;
+        }
+        if (playTime >= total) {
+            if (mOneShot) {
+                return mSize - 1;
+            }
+            playTime %= total;
+        }
+        // Find the first frame that ends after playTime.
+        int low = 0;
+        int high = mSize - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mEndTimes[mid] <= playTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return mOneShot;
+    }
+
+    public void setOneShot(boolean oneShot) {
+        mOneShot = oneShot;
+    }
+}
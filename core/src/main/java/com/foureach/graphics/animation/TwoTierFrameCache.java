@@ -0,0 +1,162 @@
+package com.foureach.graphics.animation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A frame cache with two tiers, each with its own budget and LRU eviction: decoded frames, and
+ * the encoded bytes they are decoded from. A miss in the decoded tier decodes from the encoded
+ * tier, so only a miss in both tiers reads the frame from its source. A tier with a budget of 0
+ * is skipped: without the encoded tier frames are decoded straight from their source, and with
+ * neither tier the cache is disabled and loads nothing.
+ *
+ * @param <D> the type of decoded frames
+ */
+public class TwoTierFrameCache<D> {
+    /**
+     * Reads and decodes frames for a {@link TwoTierFrameCache}. Called on the prefetch executor
+     * as well as on the thread that owns the player.
+     *
+     * @param <D> the type of decoded frames
+     */
+    public interface Loader<D> {
+        /**
+         * Reads the encoded bytes of a frame from its source.
+         *
+         * @return the bytes, or null if they cannot be read
+         */
+        byte[] readEncoded(int key);
+
+        /**
+         * Decodes a frame from memory.
+         *
+         * @return the decoded frame, or null if the bytes cannot be decoded
+         */
+        D decode(int key, byte[] encoded);
+
+        /**
+         * Reads and decodes a frame straight from its source, without holding its encoded bytes
+         * in memory. Used when the encoded tier is disabled.
+         *
+         * @return the decoded frame, or null if the frame cannot be read or decoded
+         */
+        D load(int key);
+
+        /**
+         * @return the size of a decoded frame in bytes
+         */
+        int sizeOf(D decoded);
+    }
+
+    private static final SizedLruCache.Sizer<byte[]> BYTE_ARRAY_SIZER =
+            new SizedLruCache.Sizer<byte[]>() {
+                @Override
+                public int sizeOf(byte[] value) {
+                    return value.length;
+                }
+            };
+
+    private final Loader<D> mLoader;
+
+    private final SizedLruCache<D> mDecoded;
+
+    private final SizedLruCache<byte[]> mEncoded;
+
+    /**
+     * Keys whose frames could not be decoded, so they are not read again.
+     */
+    private final Set<Integer> mUndecodable = new HashSet<>();
+
+    /**
+     * @param loader reads and decodes frames
+     * @param decodedBudget the budget of the decoded tier in bytes
+     * @param encodedBudget the budget of the encoded tier in bytes
+     */
+    public TwoTierFrameCache(final Loader<D> loader, int decodedBudget, int encodedBudget) {
+        mLoader = loader;
+        mDecoded = new SizedLruCache<>(new SizedLruCache.Sizer<D>() {
+            @Override
+            public int sizeOf(D value) {
+                return loader.sizeOf(value);
+            }
+        }, decodedBudget);
+        mEncoded = new SizedLruCache<>(BYTE_ARRAY_SIZER, encodedBudget);
+    }
+
+    /**
+     * Gets a decoded frame from the decoded tier, decoding it from the encoded tier or reading it
+     * from its source if needed.
+     *
+     * @return the decoded frame, or null if the cache is disabled or the frame cannot be read or
+     * decoded
+     */
+    public D get(int key) {
+        final boolean decodedTier = mDecoded.getMaxSize() > 0;
+        final boolean encodedTier = mEncoded.getMaxSize() > 0;
+        if (!decodedTier && !encodedTier) {
+            return null;
+        }
+        D decoded = decodedTier ? mDecoded.get(key) : null;
+        if (decoded != null) {
+            return decoded;
+        }
+        if (isUndecodable(key)) {
+            return null;
+        }
+        if (encodedTier) {
+            byte[] encoded = mEncoded.get(key);
+            if (encoded == null) {
+                encoded = mLoader.readEncoded(key);
+                if (encoded == null) {
+                    return null;
+                }
+                mEncoded.put(key, encoded);
+            }
+            decoded = mLoader.decode(key, encoded);
+            if (decoded == null) {
+                mEncoded.remove(key);
+            }
+        } else {
+            decoded = mLoader.load(key);
+        }
+        if (decoded == null) {
+            synchronized (mUndecodable) {
+                mUndecodable.add(key);
+            }
+            return null;
+        }
+        if (decodedTier) {
+            mDecoded.put(key, decoded);
+        }
+        return decoded;
+    }
+
+    /**
+     * @return true if either tier has a budget
+     */
+    public boolean isEnabled() {
+        return mDecoded.getMaxSize() > 0 || mEncoded.getMaxSize() > 0;
+    }
+
+    /**
+     * @return true if the frame could not be decoded before
+     */
+    public boolean isUndecodable(int key) {
+        synchronized (mUndecodable) {
+            return mUndecodable.contains(key);
+        }
+    }
+
+    public SizedLruCache<D> getDecodedTier() {
+        return mDecoded;
+    }
+
+    public SizedLruCache<byte[]> getEncodedTier() {
+        return mEncoded;
+    }
+
+    public void evictAll() {
+        mDecoded.evictAll();
+        mEncoded.evictAll();
+    }
+}
@@ -0,0 +1,75 @@
+package com.foureach.graphics.animation.sim;
+
+import java.util.Random;
+
+/**
+ * A distribution of simulated frame decode latencies.
+ */
+public abstract class LatencyDistribution {
+    /**
+     * Draws the latency of decoding a frame.
+     *
+     * @param frame the index of the decoded frame
+     * @param random the random source of the simulation
+     * @return the latency in milliseconds, never negative
+     */
+    public abstract long sample(int frame, Random random);
+
+    /**
+     * @return a distribution that always returns {@code latency}
+     */
+    public static LatencyDistribution constant(final long latency) {
+        return new LatencyDistribution() {
+            @Override
+            public long sample(int frame, Random random) {
+                return latency;
+            }
+        };
+    }
+
+    /**
+     * @return a distribution uniform in [{@code min}, {@code max}]
+     */
+    public static LatencyDistribution uniform(final long min, final long max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid range: [" + min + ", " + max + "]");
+        }
+        return new LatencyDistribution() {
+            @Override
+            public long sample(int frame, Random random) {
+                return min + (long) (random.nextDouble() * (max - min + 1));
+            }
+        };
+    }
+
+    /**
+     * @return a normal distribution, clamped at zero
+     */
+    public static LatencyDistribution gaussian(final double mean, final double stdDev) {
+        return new LatencyDistribution() {
+            @Override
+            public long sample(int frame, Random random) {
+                return Math.max(0, Math.round(mean + random.nextGaussian() * stdDev));
+            }
+        };
+    }
+
+    /**
+     * Returns a distribution that usually follows {@code base} but occasionally stalls, e.g. to
+     * model garbage collection pauses.
+     *
+     * @param base the regular latency distribution
+     * @param probability the probability of a stall, in [0, 1]
+     * @param stall the additional latency of a stall in milliseconds
+     */
+    public static LatencyDistribution withStalls(final LatencyDistribution base,
+            final double probability, final long stall) {
+        return new LatencyDistribution() {
+            @Override
+            public long sample(int frame, Random random) {
+                long latency = base.sample(frame, random);
+                return random.nextDouble() < probability ? latency + stall : latency;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package com.foureach.graphics.animation.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of playback commands issued at given simulated times, e.g.
+ *
+ * <pre>
+ * new PlaybackScript()
+ *         .start(0)
+ *         .reverse(500, true)
+ *         .seek(900, 3)
+ *         .rate(1000, 3f)
+ *         .stop(1200);
+ * </pre>
+ */
+public class PlaybackScript {
+    static final int START = 0;
+    static final int STOP = 1;
+    static final int REVERSE = 2;
+    static final int SEEK = 3;
+    static final int RATE = 4;
+
+    static class Command {
+        final long mTime;
+        final int mType;
+        final int mArg;
+        final float mRate;
+
+        Command(long time, int type, int arg, float rate) {
+            mTime = time;
+            mType = type;
+            mArg = arg;
+            mRate = rate;
+        }
+    }
+
+    private final List<Command> mCommands = new ArrayList<>();
+
+    public PlaybackScript start(long time) {
+        return add(time, START, 0);
+    }
+
+    public PlaybackScript stop(long time) {
+        return add(time, STOP, 0);
+    }
+
+    public PlaybackScript reverse(long time, boolean reverse) {
+        return add(time, REVERSE, reverse ? 1 : 0);
+    }
+
+    public PlaybackScript seek(long time, int frame) {
+        return add(time, SEEK, frame);
+    }
+
+    /**
+     * Changes the playback speed. Negative rates also switch to reverse.
+     */
+    public PlaybackScript rate(long time, float rate) {
+        if (rate == 0 || Float.isNaN(rate) || Float.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid playback rate: " + rate);
+        }
+        return add(time, RATE, 0, rate);
+    }
+
+    private PlaybackScript add(long time, int type, int arg) {
+        return add(time, type, arg, 0);
+    }
+
+    private PlaybackScript add(long time, int type, int arg, float rate) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Negative time: " + time);
+        }
+        mCommands.add(new Command(time, type, arg, rate));
+        return this;
+    }
+
+    List<Command> getCommands() {
+        return Collections.unmodifiableList(mCommands);
+    }
+}
@@ -0,0 +1,167 @@
+package com.foureach.graphics.animation.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a {@link TimelineSimulator} run: every displayed frame, whether it was skipped
+ * and how late its tick fired.
+ */
+public class SimulationReport {
+    /**
+     * A frame shown during the simulation.
+     */
+    public static class FrameRecord {
+        /**
+         * The simulated time at which the frame was shown.
+         */
+        public final long time;
+
+        /**
+         * How late the tick that showed the frame fired, in milliseconds. Zero for frames shown by
+         * a script command.
+         */
+        public final long lateness;
+
+        public final int frame;
+
+        public final boolean skipped;
+
+        FrameRecord(long time, long lateness, int frame, boolean skipped) {
+            this.time = time;
+            this.lateness = lateness;
+            this.frame = frame;
+            this.skipped = skipped;
+        }
+
+        @Override
+        public String toString() {
+            return "FrameRecord{time=" + time + ", lateness=" + lateness + ", frame=" + frame
+                    + ", skipped=" + skipped + "}";
+        }
+    }
+
+    private final List<FrameRecord> mFrames = new ArrayList<>();
+
+    private int mInlineDecodes;
+
+    private long mInlineDecodeTime;
+
+    private int mBackgroundDecodes;
+
+    private int mDroppedDecodes;
+
+    void addFrame(long time, long lateness, int frame, boolean skipped) {
+        mFrames.add(new FrameRecord(time, lateness, frame, skipped));
+    }
+
+    void addInlineDecode(long latency) {
+        mInlineDecodes++;
+        mInlineDecodeTime += latency;
+    }
+
+    void addBackgroundDecode() {
+        mBackgroundDecodes++;
+    }
+
+    void addDroppedDecode() {
+        mDroppedDecodes++;
+    }
+
+    public List<FrameRecord> getFrames() {
+        return Collections.unmodifiableList(mFrames);
+    }
+
+    /**
+     * @return the frames that were not decoded in time
+     */
+    public List<FrameRecord> getSkippedFrames() {
+        List<FrameRecord> skipped = new ArrayList<>();
+        for (FrameRecord r : mFrames) {
+            if (r.skipped) {
+                skipped.add(r);
+            }
+        }
+        return skipped;
+    }
+
+    public int getSkippedFrameCount() {
+        return getSkippedFrames().size();
+    }
+
+    public long getMaxLateness() {
+        long max = 0;
+        for (FrameRecord r : mFrames) {
+            max = Math.max(max, r.lateness);
+        }
+        return max;
+    }
+
+    public double getMeanLateness() {
+        if (mFrames.isEmpty()) {
+            return 0;
+        }
+        long sum = 0;
+        for (FrameRecord r : mFrames) {
+            sum += r.lateness;
+        }
+        return (double) sum / mFrames.size();
+    }
+
+    /**
+     * @param percentile the percentile in [0, 100]
+     * @return the tick lateness at the given percentile
+     */
+    public long getLatenessPercentile(double percentile) {
+        if (mFrames.isEmpty()) {
+            return 0;
+        }
+        long[] lateness = new long[mFrames.size()];
+        for (int i = 0; i < lateness.length; i++) {
+            lateness[i] = mFrames.get(i).lateness;
+        }
+        Arrays.sort(lateness);
+        int i = (int) Math.ceil(percentile / 100 * lateness.length) - 1;
+        return lateness[Math.max(0, Math.min(lateness.length - 1, i))];
+    }
+
+    /**
+     * @return how many frames were decoded on the ticking thread because they were not prefetched
+     */
+    public int getInlineDecodeCount() {
+        return mInlineDecodes;
+    }
+
+    /**
+     * @return the total time the ticking thread spent decoding frames
+     */
+    public long getInlineDecodeTime() {
+        return mInlineDecodeTime;
+    }
+
+    public int getBackgroundDecodeCount() {
+        return mBackgroundDecodes;
+    }
+
+    /**
+     * @return how many prefetch requests were dropped because their deadline had passed
+     */
+    public int getDroppedDecodeCount() {
+        return mDroppedDecodes;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationReport{frames=" + mFrames.size()
+                + ", skipped=" + getSkippedFrameCount()
+                + ", maxLateness=" + getMaxLateness()
+                + ", meanLateness=" + String.format("%.2f", getMeanLateness())
+                + ", p95Lateness=" + getLatenessPercentile(95)
+                + ", inlineDecodes=" + mInlineDecodes
+                + ", inlineDecodeTime=" + mInlineDecodeTime
+                + ", backgroundDecodes=" + mBackgroundDecodes
+                + ", droppedDecodes=" + mDroppedDecodes + "}";
+    }
+}
@@ -0,0 +1,299 @@
+package com.foureach.graphics.animation.sim;
+
+import com.foureach.graphics.animation.Clock;
+import com.foureach.graphics.animation.DeadlineExecutor;
+import com.foureach.graphics.animation.FrameCache;
+import com.foureach.graphics.animation.FrameDecoder;
+import com.foureach.graphics.animation.FramePlayer;
+import com.foureach.graphics.animation.FrameTable;
+import com.foureach.graphics.animation.TickScheduler;
+import com.foureach.graphics.animation.TimelineIndex;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs a {@link FramePlayer} headlessly against a virtual clock, so frame skips can be reproduced
+ * deterministically on a plain JVM. Decoding takes simulated time drawn from a
+ * {@link LatencyDistribution}: prefetched frames are decoded by a fixed number of simulated
+ * workers, while frames decoded inline block the ticking thread and delay the following ticks.
+ * Like a {@link com.foureach.graphics.animation.DeadlineExecutor}, the workers serve the earliest
+ * deadline first and drop requests whose deadline has passed.
+ *
+ * <pre>
+ * TimelineSimulator simulator = new TimelineSimulator(durations, false);
+ * simulator.setDecodeLatency(LatencyDistribution.gaussian(25, 10));
+ * SimulationReport report = simulator.run(new PlaybackScript().start(0), 10000);
+ * </pre>
+ */
+public class TimelineSimulator {
+    private final FrameTable mFrameTable;
+
+    private LatencyDistribution mDecodeLatency = LatencyDistribution.constant(0);
+
+    private int mWorkerCount = 1;
+
+    private int mWindowSize = FramePlayer.DEFAULT_WINDOW_SIZE;
+
+    private long mSeed = 0;
+
+    /**
+     * @param durations the duration of each frame in milliseconds
+     * @param oneShot true if the animation plays once
+     */
+    public TimelineSimulator(int[] durations, boolean oneShot) {
+        this(createTimeline(durations, oneShot));
+    }
+
+    public TimelineSimulator(FrameTable frameTable) {
+        mFrameTable = frameTable;
+    }
+
+    private static TimelineIndex createTimeline(int[] durations, boolean oneShot) {
+        TimelineIndex timeline = new TimelineIndex(durations.length);
+        for (int duration : durations) {
+            timeline.addFrame(0, duration);
+        }
+        timeline.setOneShot(oneShot);
+        return timeline;
+    }
+
+    public TimelineSimulator setDecodeLatency(LatencyDistribution decodeLatency) {
+        mDecodeLatency = decodeLatency;
+        return this;
+    }
+
+    /**
+     * Sets the number of simulated prefetch workers.
+     */
+    public TimelineSimulator setWorkerCount(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        }
+        mWorkerCount = workerCount;
+        return this;
+    }
+
+    /**
+     * Sets the prefetch window size of the simulated player.
+     */
+    public TimelineSimulator setWindowSize(int windowSize) {
+        mWindowSize = windowSize;
+        return this;
+    }
+
+    public TimelineSimulator setSeed(long seed) {
+        mSeed = seed;
+        return this;
+    }
+
+    /**
+     * Plays a script.
+     *
+     * @param script the playback commands
+     * @param duration the simulated time in milliseconds after which the simulation ends
+     * @return the report of the run
+     */
+    public SimulationReport run(PlaybackScript script, long duration) {
+        return new Run(script, duration).execute();
+    }
+
+    /**
+     * The state of a single simulation run.
+     */
+    private class Run implements Clock, TickScheduler, Executor, FrameDecoder<Integer>,
+            FramePlayer.Callback<Integer> {
+        final PriorityQueue<Event> mEvents = new PriorityQueue<>();
+        final PriorityQueue<Event> mDecodeQueue = new PriorityQueue<>();
+        final SimulationReport mReport = new SimulationReport();
+        final Random mRandom = new Random(mSeed);
+        int mIdleWorkers = mWorkerCount;
+        final PlaybackScript mScript;
+        final long mDuration;
+        final FramePlayer<Integer> mPlayer;
+
+        long mNow;
+        long mSequence;
+        Event mPendingTick;
+        long mLateness;
+        boolean mInWorker;
+
+        Run(PlaybackScript script, long duration) {
+            mScript = script;
+            mDuration = duration;
+            mPlayer = new FramePlayer<>(mFrameTable, this, this, this, this, this);
+            mPlayer.setWindowSize(mWindowSize);
+        }
+
+        SimulationReport execute() {
+            for (final PlaybackScript.Command c : mScript.getCommands()) {
+                post(c.mTime, new Runnable() {
+                    @Override
+                    public void run() {
+                        apply(c);
+                    }
+                });
+            }
+            // Like LazyLoadingAnimationDrawable, the first frame is decoded when frames are added.
+            mPlayer.setFrame(0, true, false);
+            while (!mEvents.isEmpty() && mEvents.peek().mTime <= mDuration) {
+                Event e = mEvents.poll();
+                if (e.mCancelled) {
+                    continue;
+                }
+                mNow = Math.max(mNow, e.mTime);
+                if (e == mPendingTick) {
+                    mPendingTick = null;
+                    mLateness = mNow - e.mTime;
+                    e.mTask.run();
+                    mLateness = 0;
+                } else {
+                    e.mTask.run();
+                }
+            }
+            return mReport;
+        }
+
+        void apply(PlaybackScript.Command c) {
+            switch (c.mType) {
+                case PlaybackScript.START:
+                    mPlayer.start();
+                    break;
+                case PlaybackScript.STOP:
+                    mPlayer.stop();
+                    break;
+                case PlaybackScript.REVERSE:
+                    mPlayer.setReverse(c.mArg != 0);
+                    break;
+                case PlaybackScript.SEEK:
+                    mPlayer.seek(c.mArg);
+                    break;
+                case PlaybackScript.RATE:
+                    mPlayer.setSpeed(Math.abs(c.mRate));
+                    mPlayer.setReverse(c.mRate < 0);
+                    break;
+            }
+        }
+
+        Event post(long time, Runnable task) {
+            Event e = new Event(time, mSequence++, task);
+            mEvents.add(e);
+            return e;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return mNow;
+        }
+
+        @Override
+        public void scheduleTick(long when) {
+            unscheduleTick();
+            mPendingTick = post(when, new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.tick();
+                }
+            });
+        }
+
+        @Override
+        public void unscheduleTick() {
+            if (mPendingTick != null) {
+                mPendingTick.mCancelled = true;
+                mPendingTick = null;
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            final long deadline = command instanceof DeadlineExecutor.Task
+                    ? ((DeadlineExecutor.Task) command).getDeadline() : Long.MAX_VALUE;
+            // The queue is ordered by deadline instead of time.
+            mDecodeQueue.add(new Event(deadline, mSequence++, command));
+            dispatchDecodes();
+        }
+
+        void dispatchDecodes() {
+            while (mIdleWorkers > 0 && !mDecodeQueue.isEmpty()) {
+                final Runnable command = mDecodeQueue.poll().mTask;
+                final FrameCache<?> frame = command instanceof FrameCache
+                        ? (FrameCache<?>) command : null;
+                if (frame != null && frame.isCancelled()) {
+                    continue;
+                }
+                if (frame != null && frame.getDeadline() < mNow) {
+                    mReport.addDroppedDecode();
+                    continue;
+                }
+                mIdleWorkers--;
+                long latency = mDecodeLatency.sample(frame != null ? frame.getIndex() : -1,
+                        mRandom);
+                post(mNow + latency, new Runnable() {
+                    @Override
+                    public void run() {
+                        mInWorker = true;
+                        try {
+                            command.run();
+                        } finally {
+                            mInWorker = false;
+                        }
+                        mReport.addBackgroundDecode();
+                        mIdleWorkers++;
+                        dispatchDecodes();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public Integer decodeFrame(int index) {
+            if (!mInWorker) {
+                // Decoding on the ticking thread blocks it for the whole latency.
+                long latency = mDecodeLatency.sample(index, mRandom);
+                mNow += latency;
+                mReport.addInlineDecode(latency);
+            }
+            return index;
+        }
+
+        @Override
+        public void onAnimationStart() {
+        }
+
+        @Override
+        public void onFrameSelected(int index, Integer frame) {
+        }
+
+        @Override
+        public void onNextFrame(int index, Integer frame, boolean skipped) {
+            mReport.addFrame(mNow, mLateness, index, skipped);
+        }
+
+        @Override
+        public void onAnimationEnd() {
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long mTime;
+        final long mSequence;
+        final Runnable mTask;
+        boolean mCancelled;
+
+        Event(long time, long sequence, Runnable task) {
+            mTime = time;
+            mSequence = sequence;
+            mTask = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (mTime != other.mTime) {
+                return mTime < other.mTime ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
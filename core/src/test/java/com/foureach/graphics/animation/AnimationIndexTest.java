@@ -0,0 +1,79 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class AnimationIndexTest {
+    private static AnimationIndex roundTrip(AnimationIndex index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.writeTo(out);
+        return AnimationIndex.read(out.toByteArray());
+    }
+
+    @Test
+    public void read_restoresWrittenIndex() throws Exception {
+        AnimationIndex index = new AnimationIndex();
+        index.setOneShot(true);
+        index.addFrame(new AnimationIndex.Frame(0, 33, 448, 289, 480, true, 0));
+        index.addFrame(new AnimationIndex.Frame(1, 50, -1, -1, 0, false, 1));
+        index.addFrame(new AnimationIndex.Frame(0, 20, 448, 289, 480, true, 0));
+
+        AnimationIndex read = roundTrip(index);
+        assertTrue(read.isOneShot());
+        assertEquals(3, read.getSize());
+        AnimationIndex.Frame b = read.getFrame(1);
+        assertEquals(1, b.resource);
+        assertEquals(50, b.duration);
+        assertEquals(-1, b.width);
+        assertEquals(0, b.density);
+        assertFalse(b.opaque);
+        assertEquals(0, read.getFrame(2).duplicateOf);
+        assertEquals(20, read.getFrame(2).duration);
+        assertFalse(read.isOpaque());
+    }
+
+    @Test
+    public void read_rejectsOtherData() throws Exception {
+        try {
+            AnimationIndex.read(new byte[] {1, 2, 3, 4, 0, 1});
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void toTimeline_mapsDuplicatesToFirstFrame() throws Exception {
+        AnimationIndex index = new AnimationIndex();
+        index.addFrame(new AnimationIndex.Frame(0, 10, 1, 1, 160, true, 0));
+        index.addFrame(new AnimationIndex.Frame(1, 20, 1, 1, 160, true, 1));
+        index.addFrame(new AnimationIndex.Frame(2, 30, 1, 1, 160, true, 0));
+
+        TimelineIndex timeline = index.toTimeline(new int[] {100, 101, 102});
+        assertEquals(101, timeline.getResourceId(1));
+        assertEquals(100, timeline.getResourceId(2));
+        assertEquals(30, timeline.getDuration(2));
+        assertEquals(60, timeline.getTotalDuration());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toTimeline_rejectsFramesOutsideTable() throws Exception {
+        AnimationIndex index = new AnimationIndex();
+        index.addFrame(new AnimationIndex.Frame(2, 10, 1, 1, 160, true, 0));
+        index.toTimeline(new int[] {100, 101});
+    }
+
+    @Test
+    public void getScaledWidth_scalesLikeBitmaps() throws Exception {
+        AnimationIndex.Frame frame = new AnimationIndex.Frame(0, 10, 448, 289, 480, true, 0);
+        assertEquals(299, frame.getScaledWidth(320));
+        assertEquals(193, frame.getScaledHeight(320));
+        assertEquals(448, frame.getScaledWidth(480));
+        AnimationIndex.Frame unscaled = new AnimationIndex.Frame(0, 10, 448, 289, 0, true, 0);
+        assertEquals(448, unscaled.getScaledWidth(320));
+    }
+}
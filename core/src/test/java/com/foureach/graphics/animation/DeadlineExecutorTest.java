@@ -0,0 +1,91 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeadlineExecutorTest {
+    private long mNow = 100;
+
+    private final Clock mClock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return mNow;
+        }
+    };
+
+    @Test
+    public void execute_runsEarliestDeadlineFirstAndDropsExpiredTasks() throws Exception {
+        DeadlineExecutor executor = new DeadlineExecutor(mClock, 1, "test");
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final List<Long> order = new ArrayList<>();
+
+        // Occupy the only worker so the following tasks queue up.
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (final long deadline : new long[] {300, 50, 200, 100}) {
+            executor.execute(new DeadlineExecutor.Task() {
+                @Override
+                public long getDeadline() {
+                    return deadline;
+                }
+
+                @Override
+                public void run() {
+                    synchronized (order) {
+                        order.add(deadline);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        synchronized (order) {
+            assertEquals("[100, 200, 300]", order.toString());
+        }
+        assertEquals(1, executor.getDroppedCount());
+    }
+
+    @Test
+    public void execute_runsExpiredRequiredTasks() throws Exception {
+        DeadlineExecutor executor = new DeadlineExecutor(mClock, 1, "test");
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new DeadlineExecutor.RequiredTask() {
+            @Override
+            public long getDeadline() {
+                return 50;
+            }
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getDroppedCount());
+    }
+
+    @Test
+    public void newDecodePool_boundsThreadCount() throws Exception {
+        DeadlineExecutor executor = DeadlineExecutor.newDecodePool(mClock);
+        assertTrue(executor.getThreadCount() >= 1);
+        assertTrue(executor.getThreadCount() <= DeadlineExecutor.MAX_DECODE_THREADS);
+    }
+}
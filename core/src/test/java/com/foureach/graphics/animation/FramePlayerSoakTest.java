@@ -0,0 +1,323 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays hundreds of animations at once through random start, stop, reverse, seek and rate
+ * changes, sharing the decode pool the drawables use, and fails when threads, retained frames
+ * or per-frame allocations exceed their ceilings. Run it with {@code ./gradlew :core:soakTest};
+ * {@code -Dsoak.duration=<ms>}, {@code -Dsoak.players=<n>} and {@code -Dsoak.seed=<n>} tune the
+ * run.
+ *
+ * <p>One thread plays all animations, like the main thread does, against the real clock, while
+ * frames are prefetched on a {@link DeadlineExecutor}. Each animation decodes its frames through
+ * a {@link TwoTierFrameCache}, like the drawables do when given frame cache budgets. Frames and
+ * their encoded bytes are byte arrays tracked by weak references, so the arrays still reachable
+ * after a garbage collection are the ones the players and caches retain.
+ */
+public class FramePlayerSoakTest {
+    private static final long DURATION = Long.getLong("soak.duration", 10000);
+    private static final int PLAYERS = Integer.getInteger("soak.players", 200);
+    private static final long SEED = Long.getLong("soak.seed", System.nanoTime());
+
+    private static final int FRAME_BYTES = 16 * 1024;
+    private static final int ENCODED_BYTES = FRAME_BYTES / 8;
+
+    /**
+     * The frame cache budgets of each animation.
+     */
+    private static final int DECODED_BUDGET = 4 * FRAME_BYTES;
+    private static final int ENCODED_BUDGET = 16 * ENCODED_BYTES;
+    private static final long CHECK_INTERVAL = 2000;
+
+    /**
+     * Threads the JVM may start on its own during the run, e.g. for finalization or attaching.
+     */
+    private static final int THREAD_SLACK = 4;
+
+    /**
+     * Bytes the playing thread may allocate per delivered frame, excluding inline decodes and
+     * reads.
+     */
+    private static final long ALLOCATION_PER_FRAME = 1024;
+
+    private static final Clock CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    private final Random mRandom = new Random(SEED);
+
+    private final ConcurrentLinkedQueue<WeakReference<byte[]>> mArrays =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * The bytes of the arrays allocated by inline decodes and reads, including their headers.
+     */
+    private final AtomicLong mInlineBytes = new AtomicLong();
+
+    private Thread mPlayingThread;
+
+    private long mDeliveredFrames = 0;
+
+    /**
+     * An animation with its own tick schedule, polled by the playing thread.
+     */
+    private class Animation implements TickScheduler, FrameDecoder<byte[]>,
+            TwoTierFrameCache.Loader<byte[]>, FramePlayer.Callback<byte[]> {
+        final TimelineIndex mTimeline = new TimelineIndex();
+        final TwoTierFrameCache<byte[]> mFrameCache =
+                new TwoTierFrameCache<>(this, DECODED_BUDGET, ENCODED_BUDGET);
+        final FramePlayer<byte[]> mPlayer;
+        long mTickTime = -1;
+        long mNextAction;
+
+        Animation(DeadlineExecutor executor, long now) {
+            final int size = 2 + mRandom.nextInt(60);
+            for (int i = 0; i < size; i++) {
+                mTimeline.addFrame(i, 16 + mRandom.nextInt(50));
+            }
+            mTimeline.setOneShot(mRandom.nextInt(5) == 0);
+            mPlayer = new FramePlayer<>(mTimeline, this, CLOCK, this, executor, this);
+            mPlayer.setFrame(0, true, false);
+            mNextAction = now + mRandom.nextInt(1000);
+        }
+
+        @Override
+        public void scheduleTick(long when) {
+            mTickTime = when;
+        }
+
+        @Override
+        public void unscheduleTick() {
+            mTickTime = -1;
+        }
+
+        @Override
+        public byte[] decodeFrame(int index) {
+            return mFrameCache.get(index);
+        }
+
+        @Override
+        public byte[] readEncoded(int key) {
+            return allocate(ENCODED_BYTES, key);
+        }
+
+        @Override
+        public byte[] decode(int key, byte[] encoded) {
+            return allocate(FRAME_BYTES, encoded[0]);
+        }
+
+        @Override
+        public byte[] load(int key) {
+            return allocate(FRAME_BYTES, key);
+        }
+
+        @Override
+        public int sizeOf(byte[] decoded) {
+            return decoded.length;
+        }
+
+        @Override
+        public void onAnimationStart() {
+
+        }
+
+        @Override
+        public void onFrameSelected(int index, byte[] frame) {
+
+        }
+
+        @Override
+        public void onNextFrame(int index, byte[] frame, boolean skipped) {
+            mDeliveredFrames++;
+        }
+
+        @Override
+        public void onAnimationEnd() {
+
+        }
+
+        void act() {
+            switch (mRandom.nextInt(6)) {
+                case 0:
+                    mPlayer.start();
+                    break;
+                case 1:
+                    mPlayer.stop();
+                    break;
+                case 2:
+                    mPlayer.setReverse(!mPlayer.isReverse());
+                    break;
+                case 3:
+                    mPlayer.seek(mRandom.nextInt(mTimeline.getSize()));
+                    break;
+                case 4:
+                    mPlayer.setSpeed(0.25f + mRandom.nextFloat() * 4);
+                    break;
+                default:
+                    mPlayer.stop();
+                    mPlayer.start();
+                    break;
+            }
+            mNextAction = CLOCK.uptimeMillis() + mRandom.nextInt(1000);
+        }
+    }
+
+    /**
+     * Allocates a tracked frame or encoded frame, counting it if allocated inline.
+     */
+    private byte[] allocate(int size, int index) {
+        if (Thread.currentThread() == mPlayingThread) {
+            mInlineBytes.addAndGet(size + 16);
+        }
+        final byte[] array = new byte[size];
+        array[0] = (byte) index;
+        mArrays.add(new WeakReference<>(array));
+        return array;
+    }
+
+    /**
+     * @return the bytes of the frames and encoded frames still reachable after a garbage
+     * collection
+     */
+    private long retainedFrameBytes() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        long retained = 0;
+        final Iterator<WeakReference<byte[]>> it = mArrays.iterator();
+        while (it.hasNext()) {
+            final byte[] array = it.next().get();
+            if (array == null) {
+                it.remove();
+            } else {
+                retained += array.length;
+            }
+        }
+        return retained;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(long start) {
+        return " (seed " + SEED + ", after " + (CLOCK.uptimeMillis() - start) + " ms)";
+    }
+
+    @Test
+    public void soak_staysWithinThreadAndMemoryCeilings() throws Exception {
+        mPlayingThread = Thread.currentThread();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final int baseThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        final DeadlineExecutor executor = DeadlineExecutor.newDecodePool(CLOCK);
+        final int workers = executor.getThreadCount();
+        final int threadCeiling = baseThreads + workers + THREAD_SLACK;
+        // Each player holds its window and the current frame, each worker one more frame and
+        // its encoded bytes, and each frame cache up to its budgets even when stopped.
+        final long cacheCeiling = (long) PLAYERS * (DECODED_BUDGET + ENCODED_BUDGET);
+        final long workerCeiling = workers * (FRAME_BYTES + ENCODED_BYTES);
+        final long runningCeiling = (long) PLAYERS * (FramePlayer.DEFAULT_WINDOW_SIZE + 1)
+                * FRAME_BYTES + workerCeiling + cacheCeiling;
+        final long stoppedCeiling = (long) PLAYERS * FRAME_BYTES + workerCeiling + cacheCeiling;
+
+        final long start = CLOCK.uptimeMillis();
+        final List<Animation> animations = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            animations.add(new Animation(executor, start));
+        }
+
+        final long startAllocated = allocatedBytes(threads);
+        final long startInlineBytes = mInlineBytes.get();
+        long nextCheck = start + CHECK_INTERVAL;
+        long checkAllocated = 0;
+        long now;
+        while ((now = CLOCK.uptimeMillis()) < start + DURATION) {
+            long next = now + 10;
+            for (Animation animation : animations) {
+                if (animation.mTickTime >= 0 && animation.mTickTime <= now) {
+                    animation.mTickTime = -1;
+                    animation.mPlayer.tick();
+                }
+                if (animation.mNextAction <= now) {
+                    animation.act();
+                }
+                if (animation.mTickTime >= 0) {
+                    next = Math.min(next, animation.mTickTime);
+                }
+                next = Math.min(next, animation.mNextAction);
+            }
+
+            if (now >= nextCheck) {
+                final long before = allocatedBytes(threads);
+                final long retained = retainedFrameBytes();
+                assertTrue("retained " + retained + " frame bytes, ceiling " + runningCeiling
+                        + describe(start), retained <= runningCeiling);
+                assertTrue("queued " + executor.getQueueSize() + " decodes" + describe(start),
+                        executor.getQueueSize() <= PLAYERS * FramePlayer.DEFAULT_WINDOW_SIZE);
+                assertTrue("peak of " + threads.getPeakThreadCount() + " threads, ceiling "
+                        + threadCeiling + describe(start),
+                        threads.getPeakThreadCount() <= threadCeiling);
+                checkAllocated += allocatedBytes(threads) - before;
+                nextCheck = CLOCK.uptimeMillis() + CHECK_INTERVAL;
+            }
+
+            final long sleep = next - CLOCK.uptimeMillis();
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+        }
+        final long allocated = allocatedBytes(threads) - startAllocated - checkAllocated;
+        final long inlineBytes = mInlineBytes.get() - startInlineBytes;
+
+        for (Animation animation : animations) {
+            animation.mPlayer.stop();
+        }
+        // Let the workers finish or drop what is still queued.
+        final long drainDeadline = CLOCK.uptimeMillis() + 1000;
+        while (executor.getQueueSize() > 0 && CLOCK.uptimeMillis() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        final long retained = retainedFrameBytes();
+        assertTrue("stopped players retain " + retained + " frame bytes, ceiling "
+                + stoppedCeiling + describe(start), retained <= stoppedCeiling);
+        assertTrue("peak of " + threads.getPeakThreadCount() + " threads, ceiling "
+                + threadCeiling + describe(start), threads.getPeakThreadCount() <= threadCeiling);
+
+        assertTrue("no frames delivered" + describe(start), mDeliveredFrames > 0);
+        long cacheHits = 0;
+        for (Animation animation : animations) {
+            cacheHits += animation.mFrameCache.getDecodedTier().getHitCount()
+                    + animation.mFrameCache.getEncodedTier().getHitCount();
+        }
+        assertTrue("no frame cache hits" + describe(start), cacheHits > 0);
+        if (startAllocated >= 0) {
+            final long perFrame = (allocated - inlineBytes) / mDeliveredFrames;
+            assertTrue("allocated " + perFrame + " bytes per frame, ceiling "
+                    + ALLOCATION_PER_FRAME + describe(start), perFrame <= ALLOCATION_PER_FRAME);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class FramePlayerTest implements Clock, TickScheduler, Executor, FrameDecoder<Integer>,
+        FramePlayer.Callback<Integer> {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private long mNow = 1000;
+    private long mTickTime = -1;
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final List<Integer> mDecoded = new ArrayList<>();
+    private final List<String> mEvents = new ArrayList<>();
+    private TimelineIndex mTimeline;
+
+    /**
+     * Records the outcome of each preparation.
+     */
+    private final List<Boolean> mPrepared = new ArrayList<>();
+
+    private final FramePlayer.PrepareCallback mPrepareCallback =
+            new FramePlayer.PrepareCallback() {
+                @Override
+                public void onPrepared(boolean prepared) {
+                    mPrepared.add(prepared);
+                }
+            };
+
+    /**
+     * A decoder that prepares its frames, recording whether they were still unpublished.
+     */
+    private class PreparingDecoder implements FrameDecoder<Integer>, FramePreparer<Integer> {
+        final long mPrepareTime;
+        final List<Integer> mPrepared = new ArrayList<>();
+        final List<Integer> mPublishedBeforePrepare = new ArrayList<>();
+        FramePlayer<Integer> mPlayer;
+        int mStopAt = -1;
+
+        PreparingDecoder(long prepareTime) {
+            mPrepareTime = prepareTime;
+        }
+
+        @Override
+        public Integer decodeFrame(int index) {
+            mDecoded.add(index);
+            if (index == mStopAt) {
+                mPlayer.stop();
+            }
+            return index;
+        }
+
+        @Override
+        public void prepareFrame(Integer frame) {
+            mPrepared.add(frame);
+            for (Runnable task : mTasks) {
+                FrameCache<?> f = (FrameCache<?>) task;
+                if (f.getIndex() == frame && f.getFrame() != null) {
+                    mPublishedBeforePrepare.add(frame);
+                }
+            }
+        }
+
+        @Override
+        public long getPrepareTime() {
+            return mPrepareTime;
+        }
+    }
+
+    private FramePlayer<Integer> player(int numFrames, boolean oneShot) {
+        return player(numFrames, oneShot, this);
+    }
+
+    private FramePlayer<Integer> player(int numFrames, boolean oneShot,
+            FrameDecoder<Integer> decoder) {
+        mTimeline = new TimelineIndex();
+        for (int i = 0; i < numFrames; i++) {
+            mTimeline.addFrame(i, 10);
+        }
+        mTimeline.setOneShot(oneShot);
+        FramePlayer<Integer> player = new FramePlayer<>(mTimeline, decoder, this, this, this,
+                this);
+        player.setFrame(0, true, false);
+        return player;
+    }
+
+    private void runTasks() {
+        for (Runnable task : mTasks) {
+            task.run();
+        }
+        mTasks.clear();
+    }
+
+    private void tick(FramePlayer<Integer> player) {
+        assertTrue("no tick scheduled", mTickTime >= 0);
+        mNow = mTickTime;
+        mTickTime = -1;
+        player.tick();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mEvents.clear();
+        mPrepared.clear();
+    }
+
+    @Test
+    public void start_prefetchesWindowWithDeadlines() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.start();
+
+        assertEquals(FramePlayer.DEFAULT_WINDOW_SIZE, mTasks.size());
+        for (int i = 0; i < mTasks.size(); i++) {
+            FrameCache<?> f = (FrameCache<?>) mTasks.get(i);
+            assertEquals(i + 1, f.getIndex());
+            assertEquals(mNow + 10 * (i + 1), f.getDeadline());
+        }
+        assertEquals(mNow + 10, mTickTime);
+    }
+
+    @Test
+    public void start_movesDeadlinesEarlierByPrepareTime() throws Exception {
+        FramePlayer<Integer> player = player(10, false, new PreparingDecoder(4));
+        player.start();
+
+        for (int i = 0; i < mTasks.size(); i++) {
+            FrameCache<?> f = (FrameCache<?>) mTasks.get(i);
+            assertEquals(mNow + 10 * (i + 1) - 4, f.getDeadline());
+        }
+    }
+
+    @Test
+    public void prefetch_preparesFramesBeforePublishingThem() throws Exception {
+        PreparingDecoder decoder = new PreparingDecoder(0);
+        FramePlayer<Integer> player = player(10, false, decoder);
+        player.start();
+        runTasks();
+
+        assertEquals(5, decoder.mPrepared.size());
+        assertEquals(Integer.valueOf(1), decoder.mPrepared.get(0));
+        assertTrue(decoder.mPublishedBeforePrepare.isEmpty());
+        // The first frame is decoded inline and about to be drawn, so it is not prepared.
+        assertFalse(decoder.mPrepared.contains(0));
+    }
+
+    @Test
+    public void prefetch_doesNotPrepareCancelledFrames() throws Exception {
+        PreparingDecoder decoder = new PreparingDecoder(0);
+        FramePlayer<Integer> player = player(10, false, decoder);
+        decoder.mPlayer = player;
+        // Stopping while frame 2 decodes cancels it and the frames after it.
+        decoder.mStopAt = 2;
+        player.start();
+        runTasks();
+
+        assertEquals(Arrays.asList(1), decoder.mPrepared);
+        assertFalse(mDecoded.contains(3));
+    }
+
+    @Test
+    public void tick_showsPrefetchedFrameWithoutDecodingInline() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.start();
+        runTasks();
+        mDecoded.clear();
+
+        tick(player);
+        assertEquals("frame 1", mEvents.get(mEvents.size() - 1));
+        assertEquals(Integer.valueOf(1), player.getCurrent());
+        assertTrue(mDecoded.isEmpty());
+    }
+
+    @Test
+    public void tick_reportsSkippedFrameWhenNotDecodedInTime() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.start();
+
+        tick(player);
+        assertEquals("frame 1 skipped", mEvents.get(mEvents.size() - 1));
+        assertEquals(Integer.valueOf(0), player.getCurrent());
+    }
+
+    @Test
+    public void tick_endsOneShotAnimationAtLastFrame() throws Exception {
+        FramePlayer<Integer> player = player(3, true);
+        player.start();
+        runTasks();
+
+        tick(player);
+        tick(player);
+        assertEquals("end", mEvents.get(mEvents.size() - 1));
+        assertEquals(2, player.getCurrentFrameIndex());
+        assertFalse(player.isRunning());
+        assertEquals(-1, mTickTime);
+    }
+
+    @Test
+    public void stop_cancelsPrefetchedFrames() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.start();
+        player.stop();
+        mDecoded.clear();
+
+        runTasks();
+        assertTrue(mDecoded.isEmpty());
+        assertFalse(player.isRunning());
+    }
+
+    @Test
+    public void restoreState_continuesWithoutDecoding() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.start();
+        runTasks();
+        tick(player);
+        FramePlayer.Snapshot<Integer> snapshot = player.saveState();
+        mDecoded.clear();
+
+        FramePlayer<Integer> restored = new FramePlayer<>(mTimeline, this, this, this, this,
+                this);
+        restored.restoreState(snapshot);
+        restored.resume();
+        tick(restored);
+        assertEquals(2, restored.getCurrentFrameIndex());
+        assertEquals("frame 2", mEvents.get(mEvents.size() - 1));
+        assertTrue(mDecoded.isEmpty());
+    }
+
+    @Test
+    public void restoreState_keepsDirectionAndSpeed() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.setReverse(true);
+        player.setSpeed(2.5f);
+        FramePlayer.Snapshot<Integer> snapshot = player.saveState();
+
+        FramePlayer<Integer> restored = new FramePlayer<>(mTimeline, this, this, this, this,
+                this);
+        restored.restoreState(snapshot);
+        assertTrue(restored.isReverse());
+        assertEquals(2.5f, restored.getSpeed(), 0);
+    }
+
+    @Test
+    public void prepare_decodesFramesOffThreadBeforeStart() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.reset();
+        mDecoded.clear();
+        player.prepare(DIRECT, mPrepareCallback);
+        assertTrue(player.isPreparing());
+        assertNull(player.getCurrent());
+        assertTrue(mDecoded.isEmpty());
+        assertEquals(1 + FramePlayer.DEFAULT_WINDOW_SIZE, mTasks.size());
+
+        runTasks();
+        assertEquals(Arrays.asList(true), mPrepared);
+        assertFalse(player.isPreparing());
+        assertEquals(Integer.valueOf(0), player.getCurrent());
+        mDecoded.clear();
+
+        player.start();
+        assertTrue(mTasks.isEmpty());
+        tick(player);
+        assertEquals("frame 1", mEvents.get(mEvents.size() - 1));
+        assertTrue(mDecoded.isEmpty());
+    }
+
+    @Test
+    public void start_adoptsFramesOfPendingPreparation() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.reset();
+        player.prepare(DIRECT, mPrepareCallback);
+        // Only the current frame and the first upcoming frame are decoded when it starts.
+        mTasks.remove(0).run();
+        mTasks.remove(0).run();
+        List<Runnable> prepareTasks = new ArrayList<>(mTasks);
+        mTasks.clear();
+        mDecoded.clear();
+
+        player.start();
+        assertFalse(player.isPreparing());
+        assertEquals(Arrays.asList(true), mPrepared);
+        assertEquals(Integer.valueOf(0), player.getCurrent());
+        // The frames still queued without deadlines are decoded again with the window deadlines.
+        assertEquals(FramePlayer.DEFAULT_WINDOW_SIZE - 1, mTasks.size());
+        for (int i = 0; i < mTasks.size(); i++) {
+            FrameCache<?> f = (FrameCache<?>) mTasks.get(i);
+            assertEquals(i + 2, f.getIndex());
+            assertEquals(mNow + 10 * (i + 2), f.getDeadline());
+        }
+        for (Runnable task : prepareTasks) {
+            task.run();
+        }
+        assertTrue(mDecoded.isEmpty());
+
+        runTasks();
+        tick(player);
+        assertEquals("frame 1", mEvents.get(mEvents.size() - 1));
+        assertEquals(FramePlayer.DEFAULT_WINDOW_SIZE - 1, mDecoded.size());
+        assertEquals(Arrays.asList(true), mPrepared);
+    }
+
+    @Test
+    public void start_keepsPreparedWindowWhenCurrentFrameIsNotDecoded() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.reset();
+        player.prepare(DIRECT, mPrepareCallback);
+        // The current frame competes by its display time, the window runs after other frames.
+        assertEquals(mNow + 10, ((DeadlineExecutor.Task) mTasks.get(0)).getDeadline());
+        assertEquals(Long.MAX_VALUE, ((DeadlineExecutor.Task) mTasks.get(1)).getDeadline());
+        Runnable currentTask = mTasks.remove(0);
+        runTasks();
+        mDecoded.clear();
+
+        player.start();
+        assertFalse(player.isPreparing());
+        assertEquals(Arrays.asList(true), mPrepared);
+        // Only the current frame is decoded; the decoded window is kept as it is.
+        assertEquals(Arrays.asList(0), mDecoded);
+        assertTrue(mTasks.isEmpty());
+        currentTask.run();
+        assertEquals(Arrays.asList(0), mDecoded);
+
+        tick(player);
+        assertEquals("frame 1", mEvents.get(mEvents.size() - 1));
+        assertEquals(Arrays.asList(0), mDecoded);
+    }
+
+    @Test
+    public void stop_keepsPreparationWhenNotRunning() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.reset();
+        player.prepare(DIRECT, mPrepareCallback);
+        player.stop();
+        player.setFrame(0, true, false);
+        assertTrue(player.isPreparing());
+        runTasks();
+        mDecoded.clear();
+
+        player.start();
+        assertEquals(Arrays.asList(true), mPrepared);
+        assertEquals(Integer.valueOf(0), player.getCurrent());
+        assertTrue(mDecoded.isEmpty());
+        assertTrue(mTasks.isEmpty());
+    }
+
+    @Test
+    public void seek_discardsPreparation() throws Exception {
+        FramePlayer<Integer> player = player(10, false);
+        player.prepare(DIRECT, mPrepareCallback);
+        player.seek(3);
+        assertEquals(Arrays.asList(false), mPrepared);
+        mDecoded.clear();
+
+        runTasks();
+        assertTrue(mDecoded.isEmpty());
+        assertEquals(Arrays.asList(false), mPrepared);
+        assertEquals(Integer.valueOf(3), player.getCurrent());
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return mNow;
+    }
+
+    @Override
+    public void scheduleTick(long when) {
+        mTickTime = when;
+    }
+
+    @Override
+    public void unscheduleTick() {
+        mTickTime = -1;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        mTasks.add(command);
+    }
+
+    @Override
+    public Integer decodeFrame(int index) {
+        mDecoded.add(index);
+        return index;
+    }
+
+    @Override
+    public void onAnimationStart() {
+        mEvents.add("start");
+    }
+
+    @Override
+    public void onFrameSelected(int index, Integer frame) {
+    }
+
+    @Override
+    public void onNextFrame(int index, Integer frame, boolean skipped) {
+        mEvents.add("frame " + index + (skipped ? " skipped" : ""));
+    }
+
+    @Override
+    public void onAnimationEnd() {
+        mEvents.add("end");
+    }
+}
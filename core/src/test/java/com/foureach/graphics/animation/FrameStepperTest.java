@@ -0,0 +1,78 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameStepperTest {
+    private static FrameStepper stepper(int numFrames, int duration, boolean oneShot) {
+        TimelineIndex timeline = new TimelineIndex();
+        for (int i = 0; i < numFrames; i++) {
+            timeline.addFrame(i, duration);
+        }
+        timeline.setOneShot(oneShot);
+        return new FrameStepper(timeline);
+    }
+
+    @Test
+    public void next_wrapsAroundWhenLooping() throws Exception {
+        FrameStepper stepper = stepper(5, 10, false);
+        assertEquals(1, stepper.next(0));
+        assertEquals(0, stepper.next(4));
+        assertFalse(stepper.isLastFrame(4));
+    }
+
+    @Test
+    public void next_wrapsAroundInReverse() throws Exception {
+        FrameStepper stepper = stepper(5, 10, false);
+        stepper.setReverse(true);
+        assertEquals(0, stepper.next(1));
+        assertEquals(4, stepper.next(0));
+        assertEquals(3, stepper.next(4));
+    }
+
+    @Test
+    public void next_stopsAtLastFrameWhenOneShot() throws Exception {
+        FrameStepper stepper = stepper(5, 10, true);
+        assertEquals(4, stepper.next(3));
+        assertTrue(stepper.isLastFrame(4));
+        assertEquals(4, stepper.next(4));
+
+        stepper.setReverse(true);
+        assertEquals(0, stepper.next(1));
+        assertTrue(stepper.isLastFrame(0));
+        assertFalse(stepper.isLastFrame(4));
+    }
+
+    @Test
+    public void next_skipsFramesAtHighRate() throws Exception {
+        FrameStepper stepper = stepper(20, 10, false);
+        stepper.setSpeed(4);
+        // 7 frames of 10 ms are needed to fill 16 ms at 4x.
+        assertEquals(7, stepper.next(0));
+        assertEquals(18, stepper.getDisplayTime());
+        assertEquals(1, stepper.next(14));
+    }
+
+    @Test
+    public void next_skipsFramesUpToLastFrameWhenOneShot() throws Exception {
+        FrameStepper stepper = stepper(10, 10, true);
+        stepper.setSpeed(8);
+        assertEquals(9, stepper.next(5));
+        assertTrue(stepper.isLastFrame(9));
+    }
+
+    @Test
+    public void getDisplayTime_scalesWithSpeed() throws Exception {
+        FrameStepper stepper = stepper(5, 10, false);
+        assertEquals(10, stepper.getDisplayTime(0));
+        stepper.setSpeed(0.5f);
+        assertEquals(1, stepper.next(0));
+        assertEquals(20, stepper.getDisplayTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSpeed_rejectsZero() throws Exception {
+        stepper(5, 10, false).setSpeed(0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimelineIndexTest {
+    private static TimelineIndex timeline(int... durations) {
+        TimelineIndex timeline = new TimelineIndex();
+        for (int i = 0; i < durations.length; i++) {
+            timeline.addFrame(100 + i, durations[i]);
+        }
+        return timeline;
+    }
+
+    @Test
+    public void getFrameAt_findsFrameByPlayTime() throws Exception {
+        TimelineIndex timeline = timeline(10, 0, 20, 5);
+        assertEquals(0, timeline.getFrameAt(-5));
+        assertEquals(0, timeline.getFrameAt(0));
+        assertEquals(0, timeline.getFrameAt(9));
+        // Frames without duration are never shown.
+        assertEquals(2, timeline.getFrameAt(10));
+        assertEquals(2, timeline.getFrameAt(29));
+        assertEquals(3, timeline.getFrameAt(30));
+    }
+
+    @Test
+    public void getFrameAt_wrapsAroundWhenLooping() throws Exception {
+        TimelineIndex timeline = timeline(10, 20, 5);
+        assertEquals(0, timeline.getFrameAt(35));
+        assertEquals(1, timeline.getFrameAt(35 * 3 + 10));
+    }
+
+    @Test
+    public void getFrameAt_staysOnLastFrameWhenOneShot() throws Exception {
+        TimelineIndex timeline = timeline(10, 20, 5);
+        timeline.setOneShot(true);
+        assertEquals(2, timeline.getFrameAt(35));
+        assertEquals(2, timeline.getFrameAt(1000));
+    }
+
+    @Test
+    public void getTotalDuration_sumsDurations() throws Exception {
+        TimelineIndex timeline = timeline(10, 20, 5);
+        assertEquals(35, timeline.getTotalDuration());
+        assertEquals(10, timeline.getStartTime(1));
+        assertEquals(30, timeline.getStartTime(2));
+        assertEquals(0, new TimelineIndex().getTotalDuration());
+    }
+
+    @Test
+    public void addFrame_growsBeyondCapacity() throws Exception {
+        TimelineIndex timeline = new TimelineIndex(2);
+        for (int i = 0; i < 5000; i++) {
+            timeline.addFrame(i, 33);
+        }
+        assertEquals(5000, timeline.getSize());
+        assertEquals(4321, timeline.getResourceId(4321));
+        assertEquals(4321, timeline.getFrameAt(33 * 4321 + 5));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getDuration_rejectsInvalidIndex() throws Exception {
+        timeline(10, 20).getDuration(2);
+    }
+}
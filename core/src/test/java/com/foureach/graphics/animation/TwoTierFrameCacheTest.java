@@ -0,0 +1,138 @@
+package com.foureach.graphics.animation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TwoTierFrameCacheTest {
+    /**
+     * Encodes frame k as k bytes and decodes it to a string of 10 * k bytes.
+     */
+    private static class FakeLoader implements TwoTierFrameCache.Loader<String> {
+        int reads = 0;
+        int decodes = 0;
+        int loads = 0;
+
+        @Override
+        public byte[] readEncoded(int key) {
+            reads++;
+            return key < 0 ? null : new byte[key];
+        }
+
+        @Override
+        public String decode(int key, byte[] encoded) {
+            decodes++;
+            return key == 0 ? null : "frame" + key;
+        }
+
+        @Override
+        public String load(int key) {
+            loads++;
+            return key <= 0 ? null : "frame" + key;
+        }
+
+        @Override
+        public int sizeOf(String decoded) {
+            return 10 * Integer.parseInt(decoded.substring("frame".length()));
+        }
+    }
+
+    @Test
+    public void get_decodesFromMemoryAfterFirstRead() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 0, 100);
+        assertEquals("frame5", cache.get(5));
+        assertEquals("frame5", cache.get(5));
+        assertEquals(1, loader.reads);
+        assertEquals(2, loader.decodes);
+        assertEquals(5, cache.getEncodedTier().getSize());
+    }
+
+    @Test
+    public void get_skipsDecodingWhenDecodedTierHits() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 100, 100);
+        cache.get(5);
+        cache.get(5);
+        assertEquals(1, loader.decodes);
+        assertEquals(50, cache.getDecodedTier().getSize());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsedPerTier() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 70, 10);
+        cache.get(3);
+        cache.get(4);
+        cache.get(3);
+        cache.get(5);
+        // Decoded tier: 30 + 40 + 50 exceeds 70, evicting 4 and then 3.
+        assertNull(cache.getDecodedTier().get(4));
+        assertNull(cache.getDecodedTier().get(3));
+        assertNotNull(cache.getDecodedTier().get(5));
+        // Encoded tier: the second get of 3 hit the decoded tier, so 3 stays least recently used
+        // there and is the only eviction when 5 is added.
+        assertNull(cache.getEncodedTier().get(3));
+        assertNotNull(cache.getEncodedTier().get(4));
+        assertNotNull(cache.getEncodedTier().get(5));
+        assertEquals(9, cache.getEncodedTier().getSize());
+    }
+
+    @Test
+    public void get_doesNotCacheEntriesLargerThanBudget() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 10, 4);
+        cache.get(2);
+        assertEquals("frame5", cache.get(5));
+        assertEquals(2, cache.getEncodedTier().getSize());
+        assertEquals(0, cache.getDecodedTier().getSize());
+    }
+
+    @Test
+    public void get_remembersUndecodableFrames() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 100, 100);
+        assertNull(cache.get(0));
+        assertNull(cache.get(0));
+        assertTrue(cache.isUndecodable(0));
+        assertEquals(1, loader.reads);
+        assertNull(cache.get(-1));
+        assertFalse(cache.isUndecodable(-1));
+    }
+
+    @Test
+    public void setMaxSize_trimsTier() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 0, 100);
+        cache.get(3);
+        cache.get(4);
+        cache.getEncodedTier().setMaxSize(5);
+        assertEquals(4, cache.getEncodedTier().getSize());
+        assertEquals(1, cache.getEncodedTier().getEvictionCount());
+    }
+
+    @Test
+    public void get_loadsNothingWhenBothTiersAreDisabled() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 0, 0);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(5));
+        assertNull(cache.get(5));
+        assertEquals(0, loader.reads);
+        assertEquals(0, loader.decodes);
+        assertEquals(0, loader.loads);
+    }
+
+    @Test
+    public void get_loadsFromSourceWhenEncodedTierIsDisabled() throws Exception {
+        FakeLoader loader = new FakeLoader();
+        TwoTierFrameCache<String> cache = new TwoTierFrameCache<>(loader, 100, 0);
+        assertEquals("frame5", cache.get(5));
+        assertEquals("frame5", cache.get(5));
+        assertEquals(0, loader.reads);
+        assertEquals(0, loader.decodes);
+        assertEquals(1, loader.loads);
+        assertEquals(50, cache.getDecodedTier().getSize());
+        assertEquals(0, cache.getEncodedTier().getSize());
+    }
+}
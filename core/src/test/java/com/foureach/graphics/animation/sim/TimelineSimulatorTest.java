@@ -0,0 +1,89 @@
+package com.foureach.graphics.animation.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimelineSimulatorTest {
+    private static TimelineSimulator simulator(int numFrames, int duration) {
+        int[] durations = new int[numFrames];
+        Arrays.fill(durations, duration);
+        return new TimelineSimulator(durations, false);
+    }
+
+    private static List<Integer> framesBetween(SimulationReport report, long from, long to) {
+        List<Integer> frames = new ArrayList<>();
+        for (SimulationReport.FrameRecord r : report.getFrames()) {
+            if (r.time >= from && r.time < to) {
+                frames.add(r.frame);
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void run_isReproducibleWithSameSeed() throws Exception {
+        TimelineSimulator simulator = simulator(30, 20)
+                .setDecodeLatency(LatencyDistribution.gaussian(20, 15))
+                .setSeed(42);
+        PlaybackScript script = new PlaybackScript().start(0).seek(700, 12).rate(1300, -1.5f);
+
+        SimulationReport first = simulator.run(script, 3000);
+        SimulationReport second = simulator.run(script, 3000);
+        assertEquals(first.getFrames().toString(), second.getFrames().toString());
+        assertEquals(first.toString(), second.toString());
+        assertTrue(first.getSkippedFrameCount() > 0);
+    }
+
+    @Test
+    public void run_doesNotSkipWithoutLatency() throws Exception {
+        SimulationReport report = simulator(10, 40).run(new PlaybackScript().start(0), 2000);
+        assertEquals(51, report.getFrames().size());
+        assertEquals(0, report.getSkippedFrameCount());
+        assertEquals(0, report.getDroppedDecodeCount());
+        assertEquals(0, report.getMaxLateness());
+    }
+
+    @Test
+    public void run_skipsAndDropsDecodesSlowerThanFrames() throws Exception {
+        SimulationReport report = simulator(10, 20)
+                .setDecodeLatency(LatencyDistribution.constant(100))
+                .run(new PlaybackScript().start(0), 2000);
+        assertTrue(report.getSkippedFrameCount() > 0);
+        assertTrue(report.getDroppedDecodeCount() > 0);
+    }
+
+    @Test
+    public void run_reportsInlineDecodesAsTickLateness() throws Exception {
+        PlaybackScript script = new PlaybackScript().start(0).seek(500, 5);
+        assertEquals(0, simulator(10, 40).run(script, 1000).getMaxLateness());
+
+        SimulationReport report = simulator(10, 40)
+                .setDecodeLatency(LatencyDistribution.constant(30))
+                .run(script, 1000);
+        // The first frame and the frame sought to are decoded on the ticking thread.
+        assertEquals(2, report.getInlineDecodeCount());
+        assertEquals(60, report.getInlineDecodeTime());
+        // The seek at 500 blocks until 530, 20 ms past the tick due at 510.
+        assertEquals(20, report.getMaxLateness());
+    }
+
+    @Test
+    public void run_followsScriptedCommands() throws Exception {
+        SimulationReport report = simulator(10, 40).run(new PlaybackScript()
+                .start(0)
+                .reverse(200, true)
+                .seek(400, 7)
+                .rate(600, 2f), 800);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), framesBetween(report, 0, 200));
+        assertEquals(Arrays.asList(3, 2, 1, 0, 9), framesBetween(report, 200, 400));
+        assertEquals(Arrays.asList(6, 5, 4, 3, 2), framesBetween(report, 400, 600));
+        // Twice the speed forward shows a frame every 20 ms.
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9, 0, 1, 2),
+                framesBetween(report, 600, 800));
+    }
+}
@@ -10,6 +10,7 @@ import android.view.View;
 import android.widget.ImageView;
 
 import com.foureach.graphics.drawable.AnimationListener;
+import com.foureach.graphics.drawable.FilteredAnimationListener;
 import com.foureach.graphics.drawable.LazyLoadingAnimationDrawable;
 import com.foureach.graphics.drawable.ReversibleAnimationDrawable;
 
@@ -18,6 +19,8 @@ public class MainActivity extends Activity {
 
     private ImageView mImage1, mImage2;
 
+    private LazyLoadingAnimationDrawable mLazyAnimation;
+
     private AnimationListener mAnimationListener = new AnimationListener.AnimationListenerAdapter() {
         @Override
         public void onAnimationStart(ReversibleAnimationDrawable animation) {
@@ -39,6 +42,16 @@ public class MainActivity extends Activity {
         }
     };
 
+    /**
+     * Only frame 8 matters, so the other frames are filtered out before reaching the listener.
+     * The listener stops the animation, so its events are delivered on the main thread rather
+     * than on an executor.
+     */
+    private final AnimationListener mFilteredListener = new FilteredAnimationListener
+            .Builder(mAnimationListener)
+            .setFrameRange(8, 8)
+            .build();
+
     private View.OnClickListener mOnClickListener = new View.OnClickListener() {
         @Override
         public void onClick(View view) {
@@ -71,17 +84,34 @@ public class MainActivity extends Activity {
         AnimationDrawable d = (AnimationDrawable) getResources().getDrawable(R.drawable.homer);
         final ReversibleAnimationDrawable anim1 = new ReversibleAnimationDrawable(d);
         anim1.setOneShot(true);
-        anim1.setAnimationListener(mAnimationListener);
+        anim1.setAnimationListener(mFilteredListener);
         mImage1.setImageDrawable(anim1);
 
         mImage1.setOnClickListener(mOnClickListener);
 
-        final LazyLoadingAnimationDrawable anim2 = LazyLoadingAnimationDrawable
-                .loadFromResource(getResources(), R.drawable.homer);
-        anim2.setOneShot(true);
-        anim2.setAnimationListener(mAnimationListener);
+        // Continue the animation after a configuration change instead of loading it again.
+        final LazyLoadingAnimationDrawable.RetainedState retained =
+                (LazyLoadingAnimationDrawable.RetainedState) getLastNonConfigurationInstance();
+        final LazyLoadingAnimationDrawable anim2;
+        if (retained != null) {
+            anim2 = LazyLoadingAnimationDrawable.fromRetainedState(getResources(), retained);
+        } else {
+            // Generated at build time from R.drawable.homer by the generateAnimationIndex task.
+            anim2 = LazyLoadingAnimationDrawable.loadFromIndex(getResources(),
+                    R.raw.homer_index, AnimationFrames.DRAWABLES);
+            anim2.setOneShot(true);
+            // Decode the first frames off the main thread so that the first tap plays at once.
+            anim2.prepare(null);
+        }
+        anim2.setAnimationListener(mFilteredListener);
         mImage2.setImageDrawable(anim2);
+        mLazyAnimation = anim2;
 
         mImage2.setOnClickListener(mOnClickListener);
     }
+
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+        return mLazyAnimation.retainState();
+    }
 }
@@ -0,0 +1,264 @@
+package com.foureach.graphics.drawable;
+
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An animation listener that forwards only the events another listener subscribed to. Frame
+ * events can be restricted to a range of frames, several frame events within an interval can be
+ * coalesced into one callback carrying the latest frame, and events can be delivered on an
+ * executor instead of the thread that draws the animation. One listener can be shared by several
+ * animations; frame events are coalesced per animation.
+ *
+ * <pre>
+ * drawable.setAnimationListener(new FilteredAnimationListener.Builder(listener)
+ *         .setEvents(FilteredAnimationListener.EVENT_FRAME)
+ *         .setFrameRange(8, 8)
+ *         .build());
+ * </pre>
+ */
+public class FilteredAnimationListener implements AnimationListener {
+    /**
+     * Subscribes to {@link AnimationListener#onAnimationStart(ReversibleAnimationDrawable)}.
+     */
+    public static final int EVENT_START = 1;
+
+    /**
+     * Subscribes to {@link AnimationListener#onNextFrame(ReversibleAnimationDrawable, int,
+     * Drawable, boolean)}.
+     */
+    public static final int EVENT_FRAME = 1 << 1;
+
+    /**
+     * Subscribes to {@link AnimationListener#onAnimationEnd(ReversibleAnimationDrawable)}.
+     */
+    public static final int EVENT_END = 1 << 2;
+
+    public static final int EVENT_ALL = EVENT_START | EVENT_FRAME | EVENT_END;
+
+    private final AnimationListener mListener;
+    private final int mEvents;
+    private final int mFirstFrame;
+    private final int mLastFrame;
+    private final long mCoalesceInterval;
+    private final Executor mExecutor;
+
+    private Handler mHandler;
+
+    /**
+     * The latest frame event of each animation not delivered yet when coalescing.
+     */
+    private final Map<ReversibleAnimationDrawable, PendingFrame> mPendingFrames = new HashMap<>();
+
+    /**
+     * A coalesced frame event, delivered when its interval has passed.
+     */
+    private class PendingFrame implements Runnable {
+        final ReversibleAnimationDrawable mAnimation;
+        int mFrame;
+        Drawable mDrawable;
+        boolean mSkipped;
+
+        PendingFrame(ReversibleAnimationDrawable animation) {
+            mAnimation = animation;
+        }
+
+        @Override
+        public void run() {
+            flush(mAnimation);
+        }
+    }
+
+    private FilteredAnimationListener(Builder builder) {
+        mListener = builder.mListener;
+        mEvents = builder.mEvents;
+        mFirstFrame = builder.mFirstFrame;
+        mLastFrame = builder.mLastFrame;
+        mCoalesceInterval = builder.mCoalesceInterval;
+        mExecutor = builder.mExecutor;
+    }
+
+    @Override
+    public void onAnimationStart(final ReversibleAnimationDrawable animation) {
+        if ((mEvents & EVENT_START) == 0) {
+            return;
+        }
+        flush(animation);
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onAnimationStart(animation);
+            }
+        });
+    }
+
+    @Override
+    public void onNextFrame(ReversibleAnimationDrawable animation, int frame, Drawable drawable,
+            boolean skipped) {
+        if ((mEvents & EVENT_FRAME) == 0 || frame < mFirstFrame || frame > mLastFrame) {
+            return;
+        }
+        if (mCoalesceInterval <= 0) {
+            dispatchFrame(animation, frame, drawable, skipped);
+            return;
+        }
+        PendingFrame pending = mPendingFrames.get(animation);
+        final boolean scheduled = pending != null;
+        if (!scheduled) {
+            pending = new PendingFrame(animation);
+            mPendingFrames.put(animation, pending);
+        }
+        pending.mFrame = frame;
+        pending.mDrawable = drawable;
+        pending.mSkipped = skipped;
+        if (!scheduled) {
+            if (mHandler == null) {
+                if (Looper.myLooper() == null) {
+                    // Nowhere to post the delayed delivery; deliver right away.
+                    flush(animation);
+                    return;
+                }
+                mHandler = new Handler();
+            }
+            mHandler.postAtTime(pending, SystemClock.uptimeMillis() + mCoalesceInterval);
+        }
+    }
+
+    @Override
+    public void onAnimationEnd(final ReversibleAnimationDrawable animation) {
+        if ((mEvents & EVENT_END) == 0) {
+            return;
+        }
+        flush(animation);
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onAnimationEnd(animation);
+            }
+        });
+    }
+
+    /**
+     * Delivers the pending coalesced frame event of an animation, if any.
+     */
+    private void flush(ReversibleAnimationDrawable animation) {
+        final PendingFrame pending = mPendingFrames.remove(animation);
+        if (pending == null) {
+            return;
+        }
+        if (mHandler != null) {
+            mHandler.removeCallbacks(pending);
+        }
+        dispatchFrame(animation, pending.mFrame, pending.mDrawable, pending.mSkipped);
+    }
+
+    private void dispatchFrame(final ReversibleAnimationDrawable animation, final int frame,
+            final Drawable drawable, final boolean skipped) {
+        if (mExecutor == null) {
+            mListener.onNextFrame(animation, frame, drawable, skipped);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onNextFrame(animation, frame, drawable, skipped);
+            }
+        });
+    }
+
+    private void dispatch(Runnable event) {
+        if (mExecutor == null) {
+            event.run();
+        } else {
+            mExecutor.execute(event);
+        }
+    }
+
+    /**
+     * Builds a {@link FilteredAnimationListener}. By default all events are forwarded
+     * synchronously, as if the listener were set directly.
+     */
+    public static class Builder {
+        private final AnimationListener mListener;
+        private int mEvents = EVENT_ALL;
+        private int mFirstFrame = 0;
+        private int mLastFrame = Integer.MAX_VALUE;
+        private long mCoalesceInterval = 0;
+        private Executor mExecutor;
+
+        /**
+         * @param listener the listener receiving the subscribed events
+         */
+        public Builder(AnimationListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException("listener must not be null");
+            }
+            mListener = listener;
+        }
+
+        /**
+         * @param events a combination of {@link #EVENT_START}, {@link #EVENT_FRAME} and
+         *               {@link #EVENT_END}
+         */
+        public Builder setEvents(int events) {
+            mEvents = events;
+            return this;
+        }
+
+        /**
+         * Restricts frame events to a range of frames.
+         *
+         * @param firstFrame the first frame to report, inclusive
+         * @param lastFrame the last frame to report, inclusive
+         */
+        public Builder setFrameRange(int firstFrame, int lastFrame) {
+            if (firstFrame > lastFrame) {
+                throw new IllegalArgumentException("Invalid frame range: [" + firstFrame + ", "
+                        + lastFrame + "]");
+            }
+            mFirstFrame = firstFrame;
+            mLastFrame = lastFrame;
+            return this;
+        }
+
+        /**
+         * Coalesces frame events: after a frame event, further frame events are held back for the
+         * given interval and only the latest one is delivered. Start and end events deliver the
+         * pending frame event first. Coalescing requires the animation to run on a
+         * {@link Looper} thread.
+         *
+         * @param interval the interval in milliseconds, or 0 to deliver every frame event
+         */
+        public Builder setCoalesceInterval(long interval) {
+            mCoalesceInterval = interval;
+            return this;
+        }
+
+        /**
+         * Delivers events on an executor instead of the thread that draws the animation, so
+         * heavy listeners do not delay the next frame. Use a serial executor to keep the events
+         * in order.
+         *
+         * <p>With an executor other than one running on the main thread, the listener runs off
+         * the UI thread and must not touch the drawable, e.g. call {@code stop()} or
+         * {@code getCurrent()}; post such calls back to the main thread instead. By the time the
+         * listener runs, the frame it is passed may no longer be shown.
+         *
+         * @param executor the executor, or null to deliver synchronously
+         */
+        public Builder setExecutor(Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        public FilteredAnimationListener build() {
+            return new FilteredAnimationListener(this);
+        }
+    }
+}
@@ -3,27 +3,43 @@ package com.foureach.graphics.drawable;
 
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
 import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.RawRes;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
 import android.util.Xml;
 
+import com.foureach.graphics.animation.AnimationIndex;
+import com.foureach.graphics.animation.Clock;
+import com.foureach.graphics.animation.DeadlineExecutor;
+import com.foureach.graphics.animation.FrameDecoder;
+import com.foureach.graphics.animation.FramePlayer;
+import com.foureach.graphics.animation.FramePreparer;
+import com.foureach.graphics.animation.TickScheduler;
+import com.foureach.graphics.animation.TimelineIndex;
+import com.foureach.graphics.animation.TwoTierFrameCache;
 import com.foureach.reversibleanimationdrawable.R;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * Created by JasonCYChueh on 2016/3/8.
@@ -31,41 +47,50 @@ import java.util.concurrent.Executors;
 public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
     private static final String TAG = "LazyLoadingAnimDrawable";
 
-    private static final Executor EXECUTOR = Executors.newCachedThreadPool();
+    private static final Clock CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
 
-    private static final int CACHE_SIZE = 5;
+    /**
+     * Decodes the prefetched frames of all instances earliest-deadline-first.
+     */
+    private static final Executor EXECUTOR = DeadlineExecutor.newDecodePool(CLOCK);
 
     private AnimationState mAnimationState;
 
-    private LinkedList<FrameCache> mCachedFrames = new LinkedList<>();
-
     /**
-     * The current mId, ranging from 0 to {@link #mAnimationState#getChildCount() - 1}
+     * Sequences the frames and prefetches the upcoming ones.
      */
-    private int mCurFrame = 0;
+    private FramePlayer<Drawable> mPlayer;
+
+    private AnimationListener mAnimationListener;
 
     /**
-     * Whether the mDrawable has an animation callback posted.
+     * Whether the state was restored from a {@link RetainedState} and the next visibility change
+     * should continue from it instead of restarting.
      */
-    private boolean mRunning;
+    private boolean mRestorePending = false;
 
     /**
-     * Whether the mDrawable should animate when visible.
+     * Delivers the end of {@link #prepare(PrepareCallback)} to the thread that called it.
      */
-    private boolean mAnimating = false;
-
-    private boolean mReverse = false;
-
-    private FrameCache mCurrent;
-
-    private AnimationListener mAnimationListener;
+    private Executor mPrepareExecutor;
 
     public LazyLoadingAnimationDrawable(Resources res) {
-        mAnimationState = new AnimationState(res, null);
+        this(res, null);
     }
 
     public LazyLoadingAnimationDrawable(Resources res, Resources.Theme theme) {
-        mAnimationState = new AnimationState(res, theme);
+        this(new AnimationState(res, theme));
+    }
+
+    private LazyLoadingAnimationDrawable(AnimationState state) {
+        mAnimationState = state;
+        mPlayer = new FramePlayer<>(mAnimationState.mTimeline, mAnimationState, CLOCK,
+                new DrawableScheduler(), EXECUTOR, new PlayerCallback());
     }
 
     public static LazyLoadingAnimationDrawable loadFromResource(Resources res, int id)
@@ -77,6 +102,83 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
         }
     }
 
+    /**
+     * Creates a drawable that continues where a retained drawable left off: same frames, current
+     * frame, playback rate and running state, reusing the frames that were already decoded.
+     * Nothing is parsed or decoded again, so an animation survives a configuration change without
+     * a decode burst.
+     *
+     * @param res the resources of the new configuration
+     * @param state the state returned by {@link #retainState()}
+     * @see #retainState()
+     */
+    public static LazyLoadingAnimationDrawable fromRetainedState(Resources res,
+            RetainedState state) {
+        state.mAnimationState.mRes = res;
+        LazyLoadingAnimationDrawable drawable = new LazyLoadingAnimationDrawable(
+                state.mAnimationState);
+        drawable.setPlaybackRate(state.getPlaybackRate());
+        drawable.mPlayer.restoreState(state.mSnapshot);
+        drawable.mRestorePending = true;
+        return drawable;
+    }
+
+    /**
+     * Creates a drawable from an animation index generated at build time by the
+     * {@code generateAnimationIndex} task. The index is loaded in one read: the animation list is
+     * not parsed and no frame is decoded to learn the size of the drawable. The first frame is
+     * decoded when the drawable is first drawn, or off the main thread by
+     * {@link #prepare(PrepareCallback)}.
+     *
+     * @param res the resources of the app
+     * @param id the index resource, e.g. {@code R.raw.anim_index} for {@code R.drawable.anim}
+     * @param drawables the frame resource table generated with the index,
+     *                  {@code AnimationFrames.DRAWABLES}
+     * @throws Resources.NotFoundException if the index does not exist or does not match the table
+     */
+    public static LazyLoadingAnimationDrawable loadFromIndex(Resources res, @RawRes int id,
+            int[] drawables) throws Resources.NotFoundException {
+        return loadFromIndex(res, id, drawables, null);
+    }
+
+    /**
+     * Creates a drawable from an animation index using an optional {@link Resources.Theme}.
+     *
+     * @see #loadFromIndex(Resources, int, int[])
+     */
+    public static LazyLoadingAnimationDrawable loadFromIndex(Resources res, @RawRes int id,
+            int[] drawables, Resources.Theme theme) throws Resources.NotFoundException {
+        final AnimationIndex index;
+        try {
+            index = AnimationIndex.read(readRawResource(res, id));
+        } catch (IOException e) {
+            throw new Resources.NotFoundException(e.getMessage());
+        }
+        final AnimationState state = new AnimationState(res, theme);
+        try {
+            state.setIndex(index, drawables);
+        } catch (IllegalArgumentException e) {
+            throw new Resources.NotFoundException(e.getMessage());
+        }
+        return new LazyLoadingAnimationDrawable(state);
+    }
+
+    private static byte[] readRawResource(Resources res, int id) throws IOException {
+        final InputStream in = res.openRawResource(id);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    Math.max(in.available(), 1024));
+            final byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Create a mDrawable from an XML document. For more information on how to create resources in
      * XML, see <a href="{@docRoot}guide/topics/resources/mDrawable-resource.html">Drawable
@@ -130,13 +232,20 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
     public boolean setVisible(boolean visible, boolean restart) {
         final boolean changed = super.setVisible(visible, restart);
         if (visible) {
-            if (restart || changed) {
-                boolean startFromZero = restart || !mRunning ||
-                        mCurFrame >= mAnimationState.getSize();
-                setFrame(startFromZero ? 0 : mCurFrame, true, mAnimating);
+            if (mRestorePending) {
+                // Continue where the retained drawable left off instead of restarting.
+                mRestorePending = false;
+                if (mPlayer.isAnimating()) {
+                    mPlayer.resume();
+                }
+            } else if (restart || changed) {
+                final int curFrame = mPlayer.getCurrentFrameIndex();
+                boolean startFromZero = restart || !mPlayer.isRunning() ||
+                        curFrame >= mAnimationState.getSize();
+                mPlayer.setFrame(startFromZero ? 0 : curFrame, true, mPlayer.isAnimating());
             }
         } else {
-            unscheduleSelf(this);
+            mPlayer.unschedule();
         }
         return changed;
     }
@@ -155,15 +264,49 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
      */
     @Override
     public void start() {
-        mAnimating = true;
+        if (isVisible()) {
+            mPlayer.start();
+        } else {
+            mPlayer.setAnimating(true);
+        }
+    }
 
-        if (!isRunning() && isVisible()) {
-            if (mAnimationListener != null) {
-                mAnimationListener.onAnimationStart(this);
-            }
-            // Start from current frame.
-            setFrame(mCurFrame, false, mAnimationState.getSize() > 1 || !mAnimationState.mOneShot);
+    /**
+     * Decodes the current frame and the first upcoming frames on the decoding threads, so that a
+     * following {@link #start()} shows them without decoding on the main thread. Starting before
+     * the drawable is prepared uses the frames decoded so far, while selecting another frame
+     * discards them. Must be called on a thread with a {@link android.os.Looper}, usually the main
+     * thread, where the callback is called.
+     *
+     * <pre>
+     * LazyLoadingAnimationDrawable anim = LazyLoadingAnimationDrawable
+     *         .loadFromIndex(getResources(), R.raw.anim_index, AnimationFrames.DRAWABLES);
+     * anim.prepare(new LazyLoadingAnimationDrawable.PrepareCallback() {
+     *     public void onPrepared(LazyLoadingAnimationDrawable drawable, boolean prepared) {
+     *         button.setEnabled(true);
+     *     }
+     * });
+     * </pre>
+     *
+     * @param callback called when the frames are decoded or discarded, or null
+     */
+    public void prepare(final PrepareCallback callback) {
+        if (mPrepareExecutor == null) {
+            final Handler handler = new Handler();
+            mPrepareExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
         }
+        mPlayer.prepare(mPrepareExecutor, callback == null ? null
+                : new FramePlayer.PrepareCallback() {
+                    @Override
+                    public void onPrepared(boolean prepared) {
+                        callback.onPrepared(LazyLoadingAnimationDrawable.this, prepared);
+                    }
+                });
     }
 
     /**
@@ -174,12 +317,7 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
      */
     @Override
     public void stop() {
-        mAnimating = false;
-
-        if (isRunning()) {
-            unscheduleSelf(this);
-            mCachedFrames.clear();
-        }
+        mPlayer.stop();
     }
 
     /**
@@ -189,7 +327,7 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
      */
     @Override
     public boolean isRunning() {
-        return mRunning;
+        return mPlayer.isRunning();
     }
 
     /**
@@ -200,19 +338,21 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
      */
     @Override
     public void run() {
-        nextFrame(false);
-    }
-
-    @Override
-    public void unscheduleSelf(Runnable what) {
-        mRunning = false;
-        super.unscheduleSelf(what);
+        mPlayer.tick();
     }
 
     @Override
     public void draw(Canvas canvas) {
-        if (isVisible()) {
-            mCurrent.draw(canvas);
+        if (mPlayer.getCurrent() == null && isVisible()) {
+            // Neither drawn nor prepared before.
+            mPlayer.loadCurrentFrame();
+        }
+        final Drawable current = mPlayer.getCurrent();
+        if (isVisible() && current != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                current.setAutoMirrored(mAnimationState.mAutoMirrored);
+            }
+            current.draw(canvas);
         }
     }
 
@@ -232,7 +372,7 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
 
     @Override
     public int getOpacity() {
-        return PixelFormat.OPAQUE;
+        return mAnimationState.mOpaque ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
     }
 
     @Override
@@ -277,8 +417,8 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
     }
 
     private void updateStateFromTypedArray(TypedArray a) {
-        mAnimationState.mOneShot = a
-                .getBoolean(R.styleable.LazyLoadingAnimationDrawable_android_oneshot, false);
+        mAnimationState.mTimeline.setOneShot(a
+                .getBoolean(R.styleable.LazyLoadingAnimationDrawable_android_oneshot, false));
         boolean visible = a.getBoolean(R.styleable.LazyLoadingAnimationDrawable_android_visible,
                 true);
         setVisible(visible, true);
@@ -286,64 +426,14 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
 
     public void addFrame(@DrawableRes int resid, int duration) {
         mAnimationState.addFrame(resid, duration);
-        if (!mRunning) {
-            setFrame(0, true, false);
-        }
-    }
-
-    private void nextFrame(boolean unschedule) {
-        int nextFrame = !mReverse ? mCurFrame + 1 : mCurFrame - 1;
-        final int numFrames = mAnimationState.getSize();
-        final boolean isLastFrame = mAnimationState.mOneShot
-                && (!mReverse ? nextFrame >= numFrames - 1 : nextFrame <= 0);
-
-        // Loop if necessary. One-shot animations should never hit this case.
-        if (!mAnimationState.mOneShot) {
-            if (nextFrame >= numFrames) {
-                nextFrame = 0;
-            } else if (nextFrame <= 0) {
-                nextFrame = numFrames - 1;
-            }
-        }
-        setFrame(nextFrame, unschedule, !isLastFrame);
-        // Log.d(TAG, "nextFrame: nextFrame=" + nextFrame + ", mCurrent.mIndex=" + mCurrent.mIndex);
-        if (mAnimationListener != null && isLastFrame) {
-            mAnimationListener.onAnimationEnd(this);
-        }
-    }
-
-    private void setFrame(int index, boolean unschedule, boolean animate) {
-        if (index < 0 || index >= mAnimationState.getSize()) {
-            return;
-        }
-        mAnimating = animate;
-        selectFrame(index, animate);
-        if (unschedule || animate) {
-            unscheduleSelf(this);
-        }
-        if (animate) {
-            // Unscheduling may have clobbered these values; restore them
-            mCurFrame = index;
-            mRunning = true;
-            scheduleSelf(this, SystemClock.uptimeMillis() + mAnimationState.getDuration(index));
-        }
-        if (mAnimationListener != null && mRunning) {
-            mAnimationListener.onNextFrame(this, mCurrent.mIndex, mCurrent.mDrawable,
-                    mCurrent.mSkipped);
-        }
-        if (!animate) {
-            mCachedFrames.clear();
-            mRunning = false;
+        if (!mPlayer.isRunning()) {
+            mPlayer.setFrame(0, true, false);
         }
     }
 
     @Override
     public boolean selectDrawable(int idx) {
-        if (idx == mCurFrame) {
-            return false;
-        }
-        selectFrame(idx, false);
-        return true;
+        return mPlayer.seek(idx);
     }
 
     @Override
@@ -356,61 +446,19 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
         return getIntrinsicHeight();
     }
 
-    private void selectFrame(int frame, boolean animate) {
-        mCurFrame = frame;
-        if (animate) {
-            final int numFrames = mAnimationState.getSize();
-            for (FrameCache f; !mCachedFrames.isEmpty();) {
-                f = mCachedFrames.poll();
-                if (f.mIndex == frame) {
-                    if (f.mDrawable != null) {
-                        mCurrent = f;
-                        mCurrent.mSkipped = false;
-                    } else if (f.mIndex != numFrames - 1) {
-                        f.mDrawable = mCurrent.mDrawable;
-                        mCurrent = f;
-                        mCurrent.mSkipped = true;
-                    }
-                    break;
-                }
-            }
-
-            int d = !mReverse ? 1 : -1;
-
-            int nextFrame = (mCachedFrames.isEmpty() ? frame : mCachedFrames.getLast().mIndex) + d;
-            for (; mCachedFrames.size() < CACHE_SIZE; nextFrame += d) {
-                if (!mReverse && nextFrame >= numFrames) {
-                    nextFrame = 0;
-                } else if (mReverse && nextFrame <= 0) {
-                    nextFrame = numFrames - 1;
-                }
-                FrameCache f = new FrameCache(mAnimationState, mAnimationState.getFrame(nextFrame));
-                EXECUTOR.execute(f);
-                mCachedFrames.add(f);
-            }
-        }
-        if (mCurrent == null || mCurrent.mIndex != frame) {
-            mCurrent = new FrameCache(mAnimationState, mAnimationState.getFrame(frame));
-            mCurrent.loadFrame();
-        }
-        mCurrent.mDrawable.setBounds(getBounds());
-        invalidateSelf();
-    }
-
     @Override
     public int getCurrentFrameIndex() {
-        return mCurFrame;
+        return mPlayer.getCurrentFrameIndex();
     }
 
     @Override
     public Drawable getFrame(int index) {
-        Frame frame = mAnimationState.getFrame(index);
-        return mAnimationState.loadFrame(frame);
+        return mAnimationState.loadFrame(mAnimationState.mTimeline.getResourceId(index));
     }
 
     @Override
     public Drawable getCurrent() {
-        return mCurrent.mDrawable;
+        return mPlayer.getCurrent();
     }
 
     /**
@@ -420,17 +468,54 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
         return mAnimationState.getDuration(i);
     }
 
+    /**
+     * @return The duration in milliseconds of one pass over all frames
+     */
+    public int getTotalDuration() {
+        return mAnimationState.mTimeline.getTotalDuration();
+    }
+
+    /**
+     * Finds the frame shown at a play time in O(log n). Looping animations wrap around, while
+     * one-shot animations stay on their last frame.
+     *
+     * @param playTime the time in milliseconds since the start of the animation
+     * @return the index of the frame
+     */
+    public int getFrameAt(long playTime) {
+        return mAnimationState.mTimeline.getFrameAt(playTime);
+    }
+
+    /**
+     * Moves the animation to the frame shown at a play time. A running animation keeps playing
+     * from that frame.
+     *
+     * @param playTime the time in milliseconds since the start of the animation
+     * @see #getFrameAt(long)
+     */
+    public void setPlayTime(long playTime) {
+        final int index = getFrameAt(playTime);
+        if (isRunning()) {
+            mPlayer.setFrame(index, true, true);
+        } else {
+            mPlayer.seek(index);
+        }
+    }
+
     /**
      * @return True of the animation will play once, false otherwise
      */
     public boolean isOneShot() {
-        return mAnimationState.mOneShot;
+        return mAnimationState.mTimeline.isOneShot();
     }
 
     @Override
     public void setBounds(int left, int top, int right, int bottom) {
         super.setBounds(left, top, right, bottom);
-        mCurrent.mDrawable.setBounds(left, top, right, bottom);
+        final Drawable current = mPlayer.getCurrent();
+        if (current != null) {
+            current.setBounds(left, top, right, bottom);
+        }
     }
 
     /**
@@ -440,17 +525,62 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
      */
     @Override
     public void setOneShot(boolean oneShot) {
-        mAnimationState.mOneShot = oneShot;
+        mAnimationState.mTimeline.setOneShot(oneShot);
     }
 
     @Override
     public boolean isReverse() {
-        return mReverse;
+        return mPlayer.isReverse();
     }
 
     @Override
     public void setReverse(boolean reverse) {
-        mReverse = reverse;
+        mPlayer.setReverse(reverse);
+    }
+
+    /**
+     * Sets the playback rate relative to the frame durations. Negative rates play in reverse. At
+     * rates above 1x the animation skips frames that would be shown shorter than about one
+     * display refresh, and only the frames that will be shown are prefetched.
+     *
+     * @param rate the playback rate, e.g. 2 for double speed or -0.5 for half speed in reverse
+     */
+    @Override
+    public void setPlaybackRate(float rate) {
+        super.setPlaybackRate(rate);
+        mPlayer.setSpeed(Math.abs(rate));
+    }
+
+    /**
+     * Sets the rate at which bitmap frames are expected to upload to the GPU. Prefetched frames
+     * are uploaded before they are shown, so their decodes start earlier by the upload time,
+     * estimated from the size of the drawable at 4 bytes per pixel.
+     *
+     * @param bytesPerMillisecond the upload rate, 256 KiB per millisecond by default, or 0 to not
+     *                            reserve time for uploads
+     */
+    public void setUploadRate(int bytesPerMillisecond) {
+        if (bytesPerMillisecond < 0) {
+            throw new IllegalArgumentException("Negative upload rate: " + bytesPerMillisecond);
+        }
+        mAnimationState.mUploadRate = bytesPerMillisecond;
+    }
+
+    /**
+     * Sets the memory budgets of the frame cache. Bitmap frames can be kept encoded in memory, so
+     * later decodes skip the resource I/O, and decoded as well to skip decoding on the next loop.
+     * The least recently used entries of each tier are evicted first. Frames that are not bitmaps,
+     * such as XML drawables, are not cached. The cache belongs to the frames of this drawable, so
+     * the budgets of several animations add up; both tiers are disabled by default. A budget of 0
+     * disables its tier: without encoded bytes frames are decoded straight from their resources,
+     * and without either tier frames are loaded by {@link Resources#getDrawable(int)}.
+     *
+     * @param decodedBytes the budget of decoded bitmaps in bytes, 0 by default
+     * @param encodedBytes the budget of encoded frame bytes in bytes, 0 by default
+     */
+    public void setFrameCacheBudgets(int decodedBytes, int encodedBytes) {
+        mAnimationState.mFrameCache.getDecodedTier().setMaxSize(decodedBytes);
+        mAnimationState.mFrameCache.getEncodedTier().setMaxSize(encodedBytes);
     }
 
     /**
@@ -501,19 +631,167 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
         mAnimationListener = listener;
     }
 
-    private static class AnimationState extends Drawable.ConstantState {
+    AnimationListener getAnimationListener() {
+        return mAnimationListener;
+    }
+
+    /**
+     * Creates a player over the frames of this drawable that ticks through another scheduler,
+     * sharing the decoder and the prefetch pool.
+     */
+    FramePlayer<Drawable> newPlayer(TickScheduler scheduler,
+            FramePlayer.Callback<Drawable> callback) {
+        return new FramePlayer<>(mAnimationState.mTimeline, mAnimationState, CLOCK, scheduler,
+                EXECUTOR, callback);
+    }
+
+    /**
+     * Detaches the frames, the playback position and the decoded frames from this drawable so
+     * that they can be retained across a configuration change, e.g. from
+     * {@link android.app.Activity#onRetainNonConfigurationInstance()}. This drawable stops and
+     * must not be used afterwards. The animation listener is not retained.
+     *
+     * @return the state to pass to {@link #fromRetainedState(Resources, RetainedState)}
+     */
+    public RetainedState retainState() {
+        return new RetainedState(mAnimationState, mPlayer.saveState());
+    }
+
+    /**
+     * The state of a {@link LazyLoadingAnimationDrawable} retained across a configuration change.
+     * It holds decoded frames but no reference to a view or a context other than through
+     * {@link Resources}. A retained state can be restored once.
+     */
+    public static final class RetainedState {
+        private final AnimationState mAnimationState;
+        private final FramePlayer.Snapshot<Drawable> mSnapshot;
+
+        private RetainedState(AnimationState animationState,
+                FramePlayer.Snapshot<Drawable> snapshot) {
+            mAnimationState = animationState;
+            mSnapshot = snapshot;
+        }
+
+        public int getCurrentFrameIndex() {
+            return mSnapshot.getCurrentFrameIndex();
+        }
+
+        public boolean isReverse() {
+            return mSnapshot.isReverse();
+        }
+
+        /**
+         * @return the playback rate, negative when playing in reverse
+         */
+        public float getPlaybackRate() {
+            return isReverse() ? -mSnapshot.getSpeed() : mSnapshot.getSpeed();
+        }
+
+        public boolean isRunning() {
+            return mSnapshot.isRunning();
+        }
+    }
+
+    /**
+     * Posts the ticks of the player through the drawable callback, like a framework
+     * AnimationDrawable does.
+     */
+    private class DrawableScheduler implements TickScheduler {
+        @Override
+        public void scheduleTick(long when) {
+            scheduleSelf(LazyLoadingAnimationDrawable.this, when);
+        }
+
+        @Override
+        public void unscheduleTick() {
+            unscheduleSelf(LazyLoadingAnimationDrawable.this);
+        }
+    }
+
+    /**
+     * Receives the end of {@link #prepare(PrepareCallback)}.
+     */
+    public interface PrepareCallback {
+        /**
+         * Called on the thread that called {@link #prepare(PrepareCallback)} when the first frames
+         * are decoded, or once they are discarded.
+         *
+         * @param prepared true if the drawable plays from the prepared frames, false if they were
+         *                 discarded because another frame was selected
+         */
+        void onPrepared(LazyLoadingAnimationDrawable drawable, boolean prepared);
+    }
+
+    private class PlayerCallback implements FramePlayer.Callback<Drawable> {
+        @Override
+        public void onAnimationStart() {
+            if (mAnimationListener != null) {
+                mAnimationListener.onAnimationStart(LazyLoadingAnimationDrawable.this);
+            }
+        }
+
+        @Override
+        public void onFrameSelected(int index, Drawable frame) {
+            if (frame != null) {
+                frame.setBounds(getBounds());
+            }
+            invalidateSelf();
+        }
+
+        @Override
+        public void onNextFrame(int index, Drawable frame, boolean skipped) {
+            if (mAnimationListener != null) {
+                mAnimationListener.onNextFrame(LazyLoadingAnimationDrawable.this, index, frame,
+                        skipped);
+            }
+        }
+
+        @Override
+        public void onAnimationEnd() {
+            if (mAnimationListener != null) {
+                mAnimationListener.onAnimationEnd(LazyLoadingAnimationDrawable.this);
+            }
+        }
+    }
+
+    private static class AnimationState extends Drawable.ConstantState
+            implements FrameDecoder<Drawable>, FramePreparer<Drawable>,
+            TwoTierFrameCache.Loader<Bitmap> {
+        private static final int DEFAULT_DECODED_BUDGET = 0;
+        private static final int DEFAULT_ENCODED_BUDGET = 0;
+        private static final int DEFAULT_UPLOAD_RATE = 256 * 1024;
+
         Resources mRes;
         Resources.Theme mTheme;
 
-        List<Frame> mFrames = new ArrayList<>();
+        TimelineIndex mTimeline = new TimelineIndex();
+
+        /**
+         * Caches bitmap frames by resource id, decoded and encoded.
+         */
+        final TwoTierFrameCache<Bitmap> mFrameCache = new TwoTierFrameCache<>(this,
+                DEFAULT_DECODED_BUDGET, DEFAULT_ENCODED_BUDGET);
 
-        boolean mOneShot = false;
+        /**
+         * The density of each bitmap frame read by {@link #readEncoded(int)}, by resource id.
+         */
+        private final Map<Integer, Integer> mDensities = new HashMap<>();
 
         boolean mAutoMirrored = false;
 
         int mWidth = -1;
         int mHeight = -1;
 
+        /**
+         * False if an animation index reported translucent frames.
+         */
+        boolean mOpaque = true;
+
+        /**
+         * The expected texture upload rate in bytes per millisecond, or 0 if unknown.
+         */
+        int mUploadRate = DEFAULT_UPLOAD_RATE;
+
         AnimationState(Resources res, Resources.Theme theme) {
             mRes = res;
             mTheme = theme;
@@ -535,85 +813,171 @@ public class LazyLoadingAnimationDrawable extends ReversibleAnimationDrawable {
         }
 
         int getDuration(int index) {
-            return mFrames.get(index).mDuration;
+            return mTimeline.getDuration(index);
         }
 
         void addFrame(@DrawableRes int resid, int dur) {
-            Frame f = new Frame(mFrames.size(), resid, dur);
-            if (mFrames.size() == 0) {
-                Drawable d = loadFrame(f);
+            if (mTimeline.getSize() == 0) {
+                Drawable d = loadFrame(resid);
                 mWidth = d.getIntrinsicWidth();
                 mHeight = d.getIntrinsicHeight();
             }
-            mFrames.add(f);
-        }
-
-        Frame getFrame(int index) {
-            return mFrames.get(index);
+            mTimeline.addFrame(resid, dur);
         }
 
         int getSize() {
-            return mFrames.size();
+            return mTimeline.getSize();
+        }
+
+        /**
+         * Takes the frames, size and opacity from an animation index.
+         *
+         * @param drawables the frame resource table generated with the index
+         */
+        void setIndex(AnimationIndex index, int[] drawables) {
+            mTimeline = index.toTimeline(drawables);
+            mOpaque = index.isOpaque();
+            if (index.getSize() == 0) {
+                return;
+            }
+            final AnimationIndex.Frame first = index.getFrame(0);
+            final int density = mRes.getDisplayMetrics().densityDpi;
+            mWidth = first.getScaledWidth(density);
+            mHeight = first.getScaledHeight(density);
+            if (mWidth < 0 || mHeight < 0) {
+                // The build could not measure the frame.
+                final Drawable d = loadFrame(mTimeline.getResourceId(0));
+                mWidth = d.getIntrinsicWidth();
+                mHeight = d.getIntrinsicHeight();
+            }
         }
 
-        Drawable loadFrame(Frame frame) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                return mRes.getDrawable(frame.mResId, mTheme);
-            } else {
-                return mRes.getDrawable(frame.mResId);
+        @Override
+        public Drawable decodeFrame(int index) {
+            try {
+                return loadFrame(mTimeline.getResourceId(index));
+            } catch (Resources.NotFoundException e) {
+                // ignored
+                return null;
             }
         }
-    }
-
-    private static class Frame {
-        int mDuration;
-        int mIndex;
-        int mResId;
 
-        Frame(int index, @DrawableRes int resid, int duration) {
-            mIndex = index;
-            mResId = resid;
-            mDuration = duration;
+        /**
+         * Starts the texture upload of a prefetched bitmap frame while it waits in the window, so
+         * that the first draw after the frame swap does not pay for it.
+         */
+        @Override
+        public void prepareFrame(Drawable frame) {
+            if (!(frame instanceof BitmapDrawable)) {
+                return;
+            }
+            final Bitmap bitmap = ((BitmapDrawable) frame).getBitmap();
+            if (bitmap == null) {
+                return;
+            }
+            bitmap.prepareToDraw();
         }
-    }
-
-    private static class FrameCache extends Frame implements Runnable {
-        AnimationState mAnimationState;
-        long mTime;
-        Drawable mDrawable;
-        boolean mSkipped = false;
 
-        FrameCache(AnimationState animationState, Frame frame) {
-            super(frame.mIndex, frame.mResId, frame.mDuration);
-            mAnimationState = animationState;
+        /**
+         * prepareToDraw() returns before the upload completes, so the upload time is estimated
+         * from the frame size instead of measured.
+         */
+        @Override
+        public long getPrepareTime() {
+            if (mUploadRate <= 0 || mWidth <= 0 || mHeight <= 0) {
+                return 0;
+            }
+            final long bytes = (long) mWidth * mHeight * 4;
+            return (bytes + mUploadRate - 1) / mUploadRate;
         }
 
-        FrameCache(AnimationState animationState, int index, @DrawableRes int resid, int duration) {
-            super(index, resid, duration);
-            mAnimationState = animationState;
-            mIndex = index;
-            mResId = resid;
-            mDuration = duration;
+        Drawable loadFrame(@DrawableRes int resId) {
+            if (mFrameCache.isEnabled()) {
+                final Bitmap bitmap = mFrameCache.get(resId);
+                if (bitmap != null) {
+                    return new BitmapDrawable(mRes, bitmap);
+                }
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                return mRes.getDrawable(resId, mTheme);
+            } else {
+                return mRes.getDrawable(resId);
+            }
         }
 
-        void loadFrame() {
-            run();
+        /**
+         * Reads the bytes of a bitmap frame. XML drawables and nine-patches return null, so that
+         * {@link #loadFrame(int)} falls back to {@link Resources#getDrawable(int)} for them.
+         */
+        @Override
+        public byte[] readEncoded(int resId) {
+            try {
+                final TypedValue value = new TypedValue();
+                if (!getBitmapValue(resId, value)) {
+                    return null;
+                }
+                synchronized (mDensities) {
+                    mDensities.put(resId, value.density);
+                }
+                return readRawResource(mRes, resId);
+            } catch (Resources.NotFoundException e) {
+                return null;
+            } catch (IOException e) {
+                return null;
+            }
         }
 
+        /**
+         * Decodes a bitmap frame straight from its resource when encoded bytes are not cached.
+         * XML drawables and nine-patches return null, like {@link #readEncoded(int)}.
+         */
         @Override
-        public void run() {
+        public Bitmap load(int resId) {
             try {
-                mDrawable = mAnimationState.loadFrame(this);
+                if (!getBitmapValue(resId, new TypedValue())) {
+                    return null;
+                }
+                return BitmapFactory.decodeResource(mRes, resId);
             } catch (Resources.NotFoundException e) {
-                // ignored
+                return null;
             }
         }
 
-        void draw(Canvas canvas) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                mDrawable.setAutoMirrored(mAnimationState.mAutoMirrored);
+        /**
+         * @return true if the resource is a bitmap that is not a nine-patch
+         */
+        private boolean getBitmapValue(int resId, TypedValue value) {
+            mRes.getValue(resId, value, true);
+            final String file = value.string != null ? value.string.toString() : "";
+            return !file.endsWith(".xml") && !file.endsWith(".9.png");
+        }
+
+        /**
+         * Decodes a bitmap frame from memory, scaled like {@link Resources#getDrawable(int)} scales
+         * it for the screen density. The density was recorded when the bytes were read.
+         */
+        @Override
+        public Bitmap decode(int resId, byte[] encoded) {
+            final Integer density;
+            synchronized (mDensities) {
+                density = mDensities.get(resId);
+            }
+            if (density == null) {
+                return null;
+            }
+            final BitmapFactory.Options opts = new BitmapFactory.Options();
+            if (density == TypedValue.DENSITY_DEFAULT) {
+                opts.inDensity = DisplayMetrics.DENSITY_DEFAULT;
+            } else if (density != TypedValue.DENSITY_NONE) {
+                opts.inDensity = density;
             }
-            mDrawable.draw(canvas);
+            opts.inTargetDensity = mRes.getDisplayMetrics().densityDpi;
+            return BitmapFactory.decodeByteArray(encoded, 0, encoded.length, opts);
+        }
+
+        @Override
+        public int sizeOf(Bitmap decoded) {
+            return decoded.getRowBytes() * decoded.getHeight();
         }
     }
 }
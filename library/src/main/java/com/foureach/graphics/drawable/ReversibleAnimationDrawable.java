@@ -4,6 +4,11 @@ package com.foureach.graphics.drawable;
 import android.graphics.drawable.AnimationDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.DrawableContainer;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.foureach.graphics.animation.FrameStepper;
+import com.foureach.graphics.animation.FrameTable;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -43,6 +48,28 @@ public class ReversibleAnimationDrawable extends AnimationDrawable {
 
     private boolean mReverse = false;
 
+    /**
+     * The magnitude of the playback rate; the sign is given by {@link #mReverse}.
+     */
+    private float mPlaybackRate = 1f;
+
+    private final FrameStepper mStepper = new FrameStepper(new FrameTable() {
+        @Override
+        public int getSize() {
+            return getNumberOfFrames();
+        }
+
+        @Override
+        public int getDuration(int index) {
+            return ReversibleAnimationDrawable.this.getDuration(index);
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return ReversibleAnimationDrawable.this.isOneShot();
+        }
+    });
+
     ReversibleAnimationDrawable() {
 
     }
@@ -60,19 +87,11 @@ public class ReversibleAnimationDrawable extends AnimationDrawable {
 
     private void nextFrame(boolean unschedule) {
         int currentFrame = getCurrentIndexFromSuper();
-        int nextFrame = currentFrame + (mReverse ? -1 : 1);
-        final int numFrames = getNumberOfFrames();
-        final boolean isLastFrame = isOneShot()
-                && (!mReverse ? nextFrame >= numFrames - 1 : nextFrame <= 0);
-
-        // Loop if necessary. One-shot animations should never hit this case.
-        if (!isOneShot()) {
-            if (nextFrame >= numFrames) {
-                nextFrame = 0;
-            } else if (nextFrame < 0) {
-                nextFrame = numFrames - 1;
-            }
-        }
+        mStepper.setReverse(mReverse);
+        mStepper.setSpeed(mPlaybackRate);
+        // Loops if necessary and skips frames at high playback rates.
+        final int nextFrame = mStepper.next(currentFrame);
+        final boolean isLastFrame = mStepper.isLastFrame(nextFrame);
         setFrame(nextFrame, unschedule, !isLastFrame);
         if (mAnimationListener != null && isLastFrame) {
             mAnimationListener.onAnimationEnd(this);
@@ -85,6 +104,18 @@ public class ReversibleAnimationDrawable extends AnimationDrawable {
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
+        if (animate && mPlaybackRate != 1f
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // AnimationDrawable scheduled the next frame after the unscaled duration.
+            final Callback callback = getCallback();
+            if (callback != null) {
+                mStepper.setReverse(mReverse);
+                mStepper.setSpeed(mPlaybackRate);
+                callback.unscheduleDrawable(this, this);
+                callback.scheduleDrawable(this, this,
+                        SystemClock.uptimeMillis() + mStepper.getDisplayTime(frame));
+            }
+        }
         if (mAnimationListener != null && isRunning()) {
             mAnimationListener.onNextFrame(this, frame, getCurrent(), false);
         }
@@ -109,6 +140,28 @@ public class ReversibleAnimationDrawable extends AnimationDrawable {
         mReverse = reverse;
     }
 
+    /**
+     * Sets the playback rate relative to the frame durations. Negative rates play in reverse. At
+     * rates above 1x, frames that would be shown shorter than about one display refresh are
+     * skipped on purpose to keep up. Frame times are scaled on Honeycomb and later only.
+     *
+     * @param rate the playback rate, e.g. 2 for double speed or -0.5 for half speed in reverse
+     */
+    public void setPlaybackRate(float rate) {
+        if (rate == 0 || Float.isNaN(rate) || Float.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid playback rate: " + rate);
+        }
+        mPlaybackRate = Math.abs(rate);
+        setReverse(rate < 0);
+    }
+
+    /**
+     * @return the playback rate, negative when playing in reverse
+     */
+    public float getPlaybackRate() {
+        return isReverse() ? -mPlaybackRate : mPlaybackRate;
+    }
+
     public int getCurrentFrameIndex() {
         return getCurrentIndexFromSuper();
     }
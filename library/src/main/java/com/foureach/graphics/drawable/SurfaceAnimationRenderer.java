@@ -0,0 +1,399 @@
+package com.foureach.graphics.drawable;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.TextureView;
+
+import com.foureach.graphics.animation.FramePlayer;
+import com.foureach.graphics.animation.TickScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays animations on a dedicated render thread and composites their frames onto a
+ * {@link SurfaceView} or a {@link TextureView}. Ticking, drawing and inline decoding all happen off
+ * the main thread, so layout passes or list flings on the main thread no longer freeze playback.
+ * The animations share the frame table, decoder and prefetch pool of their
+ * {@link LazyLoadingAnimationDrawable}.
+ *
+ * <pre>
+ * SurfaceAnimationRenderer renderer = new SurfaceAnimationRenderer();
+ * renderer.attach(surfaceView);
+ * SurfaceAnimationRenderer.Track track = renderer.addAnimation(
+ *         LazyLoadingAnimationDrawable.loadFromResource(getResources(), R.drawable.anim));
+ * track.setBounds(0, 0, 480, 270);
+ * track.start();
+ * </pre>
+ *
+ * <p>Animation listeners of the added drawables are notified on the render thread. Call
+ * {@link #release()} when the renderer is no longer needed to stop its thread.
+ */
+public class SurfaceAnimationRenderer {
+    private static final String TAG = "SurfaceAnimRenderer";
+
+    private final HandlerThread mThread;
+
+    private final Handler mHandler;
+
+    /**
+     * Guards {@link #mSurface}, which the main thread replaces while the render thread draws.
+     */
+    private final Object mSurfaceLock = new Object();
+
+    private Surface mSurface;
+
+    /**
+     * Accessed on the render thread only.
+     */
+    private final List<Track> mTracks = new ArrayList<>();
+
+    private boolean mRenderPending = false;
+
+    private final Runnable mRender = new Runnable() {
+        @Override
+        public void run() {
+            render();
+        }
+    };
+
+    public SurfaceAnimationRenderer() {
+        mThread = new HandlerThread("AnimationRenderer", Process.THREAD_PRIORITY_DISPLAY);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Renders onto the surface of a {@link SurfaceView} while it exists.
+     */
+    public void attach(SurfaceView view) {
+        view.getHolder().addCallback(new SurfaceHolder.Callback() {
+            @Override
+            public void surfaceCreated(SurfaceHolder holder) {
+                setSurface(holder.getSurface());
+            }
+
+            @Override
+            public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+                requestRender();
+            }
+
+            @Override
+            public void surfaceDestroyed(SurfaceHolder holder) {
+                setSurface(null);
+            }
+        });
+    }
+
+    /**
+     * Renders onto the surface texture of a {@link TextureView} while it is available. Requires
+     * Ice Cream Sandwich or later.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public void attach(TextureView view) {
+        view.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            private Surface mTextureSurface;
+
+            @Override
+            public void onSurfaceTextureAvailable(SurfaceTexture texture, int width, int height) {
+                mTextureSurface = new Surface(texture);
+                setSurface(mTextureSurface);
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(SurfaceTexture texture, int width,
+                    int height) {
+                requestRender();
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(SurfaceTexture texture) {
+                setSurface(null);
+                if (mTextureSurface != null) {
+                    mTextureSurface.release();
+                    mTextureSurface = null;
+                }
+                return true;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(SurfaceTexture texture) {
+
+            }
+        });
+    }
+
+    /**
+     * Sets the surface to render onto. When this method returns, the previous surface is no
+     * longer used, so it can be called from {@link SurfaceHolder.Callback#surfaceDestroyed}.
+     *
+     * @param surface the surface, or null to stop drawing
+     */
+    public void setSurface(Surface surface) {
+        synchronized (mSurfaceLock) {
+            mSurface = surface;
+        }
+        requestRender();
+    }
+
+    /**
+     * Adds an animation. Its frames are decoded and drawn on the render thread; the drawable
+     * itself is not drawn and should not be started.
+     *
+     * @param animation the animation providing the frames
+     * @return the track controlling the animation on this renderer
+     */
+    public Track addAnimation(LazyLoadingAnimationDrawable animation) {
+        final Track track = new Track(animation);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                track.attach();
+            }
+        });
+        return track;
+    }
+
+    /**
+     * Stops all animations and the render thread.
+     */
+    public void release() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Track track : mTracks) {
+                    track.mPlayer.stop();
+                }
+                mTracks.clear();
+                mThread.quit();
+            }
+        });
+        setSurface(null);
+    }
+
+    private void requestRender() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleRender();
+            }
+        });
+    }
+
+    /**
+     * Coalesces the frame changes of all tracks into one render. Render thread only.
+     */
+    private void scheduleRender() {
+        if (!mRenderPending) {
+            mRenderPending = true;
+            mHandler.post(mRender);
+        }
+    }
+
+    private void render() {
+        mRenderPending = false;
+        synchronized (mSurfaceLock) {
+            if (mSurface == null || !mSurface.isValid()) {
+                return;
+            }
+            final Canvas canvas;
+            try {
+                canvas = mSurface.lockCanvas(null);
+            } catch (Surface.OutOfResourcesException e) {
+                Log.w(TAG, "Cannot lock surface", e);
+                return;
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Cannot lock surface", e);
+                return;
+            }
+            if (canvas == null) {
+                return;
+            }
+            try {
+                canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                for (Track track : mTracks) {
+                    track.draw(canvas);
+                }
+            } finally {
+                mSurface.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    /**
+     * An animation played by a {@link SurfaceAnimationRenderer}. The methods can be called from
+     * any thread; they take effect on the render thread.
+     */
+    public class Track {
+        private final LazyLoadingAnimationDrawable mAnimation;
+
+        private final FramePlayer<Drawable> mPlayer;
+
+        /**
+         * The frame the drawable showed when the track was added, read on the main thread.
+         */
+        private final int mStartFrame;
+
+        /**
+         * Accessed on the render thread only.
+         */
+        private final Rect mBounds = new Rect();
+
+        private final Runnable mTick = new Runnable() {
+            @Override
+            public void run() {
+                mPlayer.tick();
+            }
+        };
+
+        Track(LazyLoadingAnimationDrawable animation) {
+            mAnimation = animation;
+            mPlayer = animation.newPlayer(new TrackScheduler(), new TrackCallback());
+            mPlayer.setReverse(animation.isReverse());
+            mPlayer.setSpeed(Math.abs(animation.getPlaybackRate()));
+            mStartFrame = animation.getCurrentFrameIndex();
+        }
+
+        void attach() {
+            mTracks.add(this);
+            mPlayer.setFrame(mStartFrame, true, false);
+        }
+
+        void draw(Canvas canvas) {
+            final Drawable current = mPlayer.getCurrent();
+            if (current != null) {
+                current.setBounds(mBounds);
+                current.draw(canvas);
+            }
+        }
+
+        private void post(Runnable r) {
+            mHandler.post(r);
+        }
+
+        public void start() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.start();
+                }
+            });
+        }
+
+        public void stop() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.stop();
+                }
+            });
+        }
+
+        public void setReverse(final boolean reverse) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.setReverse(reverse);
+                }
+            });
+        }
+
+        /**
+         * @see ReversibleAnimationDrawable#setPlaybackRate(float)
+         */
+        public void setPlaybackRate(final float rate) {
+            if (rate == 0 || Float.isNaN(rate) || Float.isInfinite(rate)) {
+                throw new IllegalArgumentException("Invalid playback rate: " + rate);
+            }
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.setSpeed(Math.abs(rate));
+                    mPlayer.setReverse(rate < 0);
+                }
+            });
+        }
+
+        /**
+         * Sets where the animation is drawn on the surface.
+         */
+        public void setBounds(final int left, final int top, final int right, final int bottom) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mBounds.set(left, top, right, bottom);
+                    scheduleRender();
+                }
+            });
+        }
+
+        /**
+         * Stops the animation and removes it from the renderer.
+         */
+        public void remove() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mPlayer.stop();
+                    mTracks.remove(Track.this);
+                    scheduleRender();
+                }
+            });
+        }
+
+        private class TrackScheduler implements TickScheduler {
+            @Override
+            public void scheduleTick(long when) {
+                mHandler.postAtTime(mTick, when);
+            }
+
+            @Override
+            public void unscheduleTick() {
+                mHandler.removeCallbacks(mTick);
+            }
+        }
+
+        private class TrackCallback implements FramePlayer.Callback<Drawable> {
+            @Override
+            public void onAnimationStart() {
+                final AnimationListener listener = mAnimation.getAnimationListener();
+                if (listener != null) {
+                    listener.onAnimationStart(mAnimation);
+                }
+            }
+
+            @Override
+            public void onFrameSelected(int index, Drawable frame) {
+                scheduleRender();
+            }
+
+            @Override
+            public void onNextFrame(int index, Drawable frame, boolean skipped) {
+                final AnimationListener listener = mAnimation.getAnimationListener();
+                if (listener != null) {
+                    listener.onNextFrame(mAnimation, index, frame, skipped);
+                }
+            }
+
+            @Override
+            public void onAnimationEnd() {
+                final AnimationListener listener = mAnimation.getAnimationListener();
+                if (listener != null) {
+                    listener.onAnimationEnd(mAnimation);
+                }
+            }
+        }
+    }
+}